@@ -16,11 +16,13 @@
 
 package android.database;
 
+import static org.junit.Assert.assertEquals;
 import static org.junit.Assert.assertTrue;
 
 import android.content.Context;
 import android.database.sqlite.SQLiteCursor;
 import android.database.sqlite.SQLiteDatabase;
+import android.database.sqlite.SQLiteStatement;
 import android.perftests.utils.BenchmarkState;
 import android.perftests.utils.PerfStatusReporter;
 import android.support.test.InstrumentationRegistry;
@@ -45,6 +47,8 @@ public class CursorWindowPerfTest {
 
     private static final String DB_NAME = CursorWindowPerfTest.class.toString();
 
+    private static final int SCAN_ROWS = 100000;
+
     private static SQLiteDatabase sDatabase;
 
     @BeforeClass
@@ -60,6 +64,19 @@ public class CursorWindowPerfTest {
             sDatabase.execSQL(insert, helper.createItem(0));
         }
 
+        sDatabase.execSQL("CREATE TABLE `Scan` (`a` INTEGER, `b` TEXT, PRIMARY KEY(`a`))");
+        sDatabase.beginTransaction();
+        try (SQLiteStatement insert =
+                sDatabase.compileStatement("INSERT INTO `Scan`(`a`, `b`) VALUES (?, ?)")) {
+            for (int i = 0; i < SCAN_ROWS; i++) {
+                insert.bindLong(1, i);
+                insert.bindString(2, "row " + i);
+                insert.executeInsert();
+            }
+            sDatabase.setTransactionSuccessful();
+        } finally {
+            sDatabase.endTransaction();
+        }
     }
 
     @AfterClass
@@ -87,6 +104,46 @@ public class CursorWindowPerfTest {
         loadRowFromCursorWindow(TableHelper.USER, false);
     }
 
+    @Test
+    public void scanRows() {
+        scanRows(false, 0);
+    }
+
+    @Test
+    public void scanRows_forwardOnly() {
+        scanRows(true, 0);
+    }
+
+    @Test
+    public void scanRows_forwardOnlyLargeWindow() {
+        scanRows(true, 8 * 1024 * 1024);
+    }
+
+    /**
+     * Reads every row of a {@link #SCAN_ROWS} row query, which needs many windows to be filled.
+     */
+    private void scanRows(boolean forwardOnly, long windowSizeBytes) {
+        BenchmarkState state = mPerfStatusReporter.getBenchmarkState();
+        while (state.keepRunning()) {
+            try (Cursor cursor = sDatabase.rawQuery("SELECT * from Scan", new String[0])) {
+                SQLiteCursor sqLiteCursor = (SQLiteCursor) cursor;
+                sqLiteCursor.setFillWindowForwardOnly(forwardOnly);
+                if (windowSizeBytes > 0) {
+                    sqLiteCursor.setWindow(new CursorWindow("scan", windowSizeBytes));
+                }
+                final int indexOfA = cursor.getColumnIndexOrThrow("a");
+                final int indexOfB = cursor.getColumnIndexOrThrow("b");
+                int count = 0;
+                while (cursor.moveToNext()) {
+                    cursor.getLong(indexOfA);
+                    cursor.getString(indexOfB);
+                    count++;
+                }
+                assertEquals(SCAN_ROWS, count);
+            }
+        }
+    }
+
     private void loadRowFromCursorWindow(TableHelper helper, boolean doubleRef) {
         try (Cursor cursor = sDatabase.rawQuery(helper.readSql(), new String[0])) {
             TableHelper.CursorReader reader = helper.createReader(cursor);
@@ -153,6 +153,71 @@ public class ParcelPerfTest {
         }
     }
 
+    private static final String[] REPEATED_STRINGS = {
+        "com.android.settings", "android.permission.INTERNET",
+        "android.permission.ACCESS_NETWORK_STATE", "com.android.settings.SubSettings",
+    };
+    private static final int REPEATED_STRING_COUNT = 1000;
+
+    private static void writeRepeatedStrings(Parcel p) {
+        for (int i = 0; i < REPEATED_STRING_COUNT; i++) {
+            p.writeString(REPEATED_STRINGS[i % REPEATED_STRINGS.length]);
+        }
+    }
+
+    private static void readRepeatedStrings(Parcel p) {
+        for (int i = 0; i < REPEATED_STRING_COUNT; i++) {
+            p.readString();
+        }
+    }
+
+    @Test
+    public void timeWriteRepeatedStrings() {
+        final BenchmarkState state = mPerfStatusReporter.getBenchmarkState();
+        while (state.keepRunning()) {
+            mParcel.setDataPosition(0);
+            writeRepeatedStrings(mParcel);
+        }
+    }
+
+    @Test
+    public void timeWriteRepeatedStringsPooled() {
+        final BenchmarkState state = mPerfStatusReporter.getBenchmarkState();
+        while (state.keepRunning()) {
+            mParcel.setDataPosition(0);
+            final PooledStringWriter writer = new PooledStringWriter(mParcel);
+            writer.installAsHelper();
+            writeRepeatedStrings(mParcel);
+            writer.finish();
+        }
+    }
+
+    @Test
+    public void timeReadRepeatedStrings() {
+        writeRepeatedStrings(mParcel);
+        final BenchmarkState state = mPerfStatusReporter.getBenchmarkState();
+        while (state.keepRunning()) {
+            mParcel.setDataPosition(0);
+            readRepeatedStrings(mParcel);
+        }
+    }
+
+    @Test
+    public void timeReadRepeatedStringsPooled() {
+        final PooledStringWriter writer = new PooledStringWriter(mParcel);
+        writer.installAsHelper();
+        writeRepeatedStrings(mParcel);
+        writer.finish();
+        final BenchmarkState state = mPerfStatusReporter.getBenchmarkState();
+        while (state.keepRunning()) {
+            mParcel.setDataPosition(0);
+            final PooledStringReader reader = new PooledStringReader(mParcel);
+            reader.installAsHelper();
+            readRepeatedStrings(mParcel);
+            reader.finish();
+        }
+    }
+
     @Test
     public void timeObtainRecycle() {
         // Use up the pooled instances.
@@ -0,0 +1,133 @@
+/*
+ * Copyright (C) 2017 The Android Open Source Project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may not
+ * use this file except in compliance with the License. You may obtain a copy of
+ * the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+ * WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the
+ * License for the specific language governing permissions and limitations under
+ * the License.
+ */
+
+package android.text;
+
+import android.perftests.utils.BenchmarkState;
+import android.perftests.utils.PerfStatusReporter;
+
+import android.support.test.filters.LargeTest;
+import android.support.test.runner.AndroidJUnit4;
+
+import static android.text.Layout.Alignment.ALIGN_NORMAL;
+
+import java.util.Random;
+import java.util.concurrent.CountDownLatch;
+
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+
+/**
+ * Measures the cost of laying out the same content repeatedly, as happens when list items are
+ * rebound, and of measuring text from several threads at once.
+ */
+@LargeTest
+@RunWith(AndroidJUnit4.class)
+public class TextMeasurementPerfTest {
+
+    @Rule
+    public PerfStatusReporter mPerfStatusReporter = new PerfStatusReporter();
+
+    private static final String ALPHABETS = "abcdefghijklmnopqrstuvwxyz";
+    private static final int WORD_COUNT = 8;
+    private static final int ITEM_COUNT = 20;
+    private static final int THREAD_COUNT = 4;
+
+    private static String[] getItems() {
+        final Random r = new Random(1234567890);
+        final String[] items = new String[ITEM_COUNT];
+        for (int i = 0; i < ITEM_COUNT; i++) {
+            final StringBuilder builder = new StringBuilder();
+            for (int j = 0; j < WORD_COUNT; j++) {
+                final int wordLength = 1 + r.nextInt(10);
+                for (int k = 0; k < wordLength; k++) {
+                    builder.append(ALPHABETS.charAt(r.nextInt(ALPHABETS.length())));
+                }
+                builder.append(' ');
+            }
+            items[i] = builder.toString();
+        }
+        return items;
+    }
+
+    @Test
+    public void testIsBoring_rebind() {
+        final String[] items = getItems();
+        final TextPaint paint = new TextPaint();
+        final BoringLayout.Metrics metrics = new BoringLayout.Metrics();
+
+        BenchmarkState state = mPerfStatusReporter.getBenchmarkState();
+        while (state.keepRunning()) {
+            for (String item : items) {
+                BoringLayout.isBoring(item, paint, metrics);
+            }
+        }
+    }
+
+    @Test
+    public void testGetDesiredWidth_rebind() {
+        final String[] items = getItems();
+        final TextPaint paint = new TextPaint();
+
+        BenchmarkState state = mPerfStatusReporter.getBenchmarkState();
+        while (state.keepRunning()) {
+            for (String item : items) {
+                Layout.getDesiredWidth(item, paint);
+            }
+        }
+    }
+
+    @Test
+    public void testDynamicLayout_rebind() {
+        final String[] items = getItems();
+        final TextPaint paint = new TextPaint();
+
+        BenchmarkState state = mPerfStatusReporter.getBenchmarkState();
+        while (state.keepRunning()) {
+            for (String item : items) {
+                new DynamicLayout(item, paint, 1000, ALIGN_NORMAL, 1.0f, 0.0f, false);
+            }
+        }
+    }
+
+    @Test
+    public void testStaticLayout_concurrentThreads() throws InterruptedException {
+        final String[] items = getItems();
+
+        BenchmarkState state = mPerfStatusReporter.getBenchmarkState();
+        while (state.keepRunning()) {
+            state.pauseTiming();
+            final CountDownLatch done = new CountDownLatch(THREAD_COUNT);
+            final Thread[] threads = new Thread[THREAD_COUNT];
+            for (int i = 0; i < THREAD_COUNT; i++) {
+                threads[i] = new Thread(() -> {
+                    final TextPaint paint = new TextPaint();
+                    for (String item : items) {
+                        StaticLayout.Builder.obtain(item, 0, item.length(), paint, 100).build();
+                    }
+                    done.countDown();
+                });
+            }
+            state.resumeTiming();
+
+            for (Thread thread : threads) {
+                thread.start();
+            }
+            done.await();
+        }
+    }
+}
@@ -0,0 +1,125 @@
+/*
+ * Copyright (C) 2017 The Android Open Source Project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may not
+ * use this file except in compliance with the License. You may obtain a copy of
+ * the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+ * WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the
+ * License for the specific language governing permissions and limitations under
+ * the License.
+ */
+
+package android.widget;
+
+import android.perftests.utils.BenchmarkState;
+import android.perftests.utils.PerfStatusReporter;
+import android.perftests.utils.StubActivity;
+import android.support.test.filters.LargeTest;
+import android.support.test.rule.ActivityTestRule;
+import android.support.test.runner.AndroidJUnit4;
+import android.text.PrecomputedLayout;
+import android.view.View;
+
+import java.util.Random;
+
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+
+/**
+ * Compares the UI thread cost of displaying a long paragraph with {@link TextView#setText}
+ * against adopting a {@link PrecomputedLayout} built ahead of time.
+ */
+@LargeTest
+@RunWith(AndroidJUnit4.class)
+public class TextViewPrecomputedLayoutPerfTest {
+    private static final int WIDTH = 1000;
+    private static final int WORD_COUNT = 500;
+    private static final String ALPHABETS = "abcdefghijklmnopqrstuvwxyz";
+
+    @Rule
+    public ActivityTestRule<StubActivity> mActivityRule = new ActivityTestRule(StubActivity.class);
+
+    @Rule
+    public PerfStatusReporter mPerfStatusReporter = new PerfStatusReporter();
+
+    private static String getText() {
+        final Random r = new Random(1234567890);
+        final StringBuilder builder = new StringBuilder();
+        for (int i = 0; i < WORD_COUNT; i++) {
+            final int wordLength = 1 + r.nextInt(10);
+            for (int j = 0; j < wordLength; j++) {
+                builder.append(ALPHABETS.charAt(r.nextInt(ALPHABETS.length())));
+            }
+            builder.append(' ');
+        }
+        return builder.toString();
+    }
+
+    private static void measure(TextView textView) {
+        textView.measure(
+                View.MeasureSpec.makeMeasureSpec(WIDTH, View.MeasureSpec.EXACTLY),
+                View.MeasureSpec.makeMeasureSpec(0, View.MeasureSpec.UNSPECIFIED));
+    }
+
+    private static PrecomputedLayout precompute(TextView textView, CharSequence text) {
+        return new PrecomputedLayout.Builder(text, textView.getPaint(), WIDTH)
+                .setLineSpacing(textView.getLineSpacingExtra(),
+                        textView.getLineSpacingMultiplier())
+                .setIncludePad(textView.getIncludeFontPadding())
+                .setBreakStrategy(textView.getBreakStrategy())
+                .setHyphenationFrequency(textView.getHyphenationFrequency())
+                .setJustificationMode(textView.getJustificationMode())
+                .build();
+    }
+
+    @Test
+    public void testSetText() {
+        final TextView textView = new TextView(mActivityRule.getActivity());
+        final String text = getText();
+
+        BenchmarkState state = mPerfStatusReporter.getBenchmarkState();
+        while (state.keepRunning()) {
+            state.pauseTiming();
+            // Make sure the text is considered new on every iteration.
+            final String newText = new String(text);
+            state.resumeTiming();
+
+            textView.setText(newText);
+            measure(textView);
+        }
+    }
+
+    @Test
+    public void testSetPrecomputedLayout() {
+        final TextView textView = new TextView(mActivityRule.getActivity());
+        final String text = getText();
+
+        BenchmarkState state = mPerfStatusReporter.getBenchmarkState();
+        while (state.keepRunning()) {
+            state.pauseTiming();
+            // Stands in for the work done on a background thread.
+            final PrecomputedLayout precomputed = precompute(textView, new String(text));
+            state.resumeTiming();
+
+            textView.setPrecomputedLayout(precomputed);
+            measure(textView);
+        }
+    }
+
+    @Test
+    public void testPrecompute() {
+        final TextView textView = new TextView(mActivityRule.getActivity());
+        final String text = getText();
+
+        BenchmarkState state = mPerfStatusReporter.getBenchmarkState();
+        while (state.keepRunning()) {
+            precompute(textView, text);
+        }
+    }
+}
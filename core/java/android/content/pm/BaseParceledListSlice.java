@@ -20,6 +20,8 @@ import android.os.Binder;
 import android.os.IBinder;
 import android.os.Parcel;
 import android.os.Parcelable;
+import android.os.PooledStringReader;
+import android.os.PooledStringWriter;
 import android.os.RemoteException;
 import android.util.Log;
 
@@ -52,6 +54,8 @@ abstract class BaseParceledListSlice<T> implements Parcelable {
 
     private int mInlineCountLimit = Integer.MAX_VALUE;
 
+    private boolean mPoolStrings;
+
     public BaseParceledListSlice(List<T> list) {
         mList = list;
     }
@@ -67,7 +71,9 @@ abstract class BaseParceledListSlice<T> implements Parcelable {
 
         Parcelable.Creator<?> creator = readParcelableCreator(p, loader);
         Class<?> listElementClass = null;
+        final boolean pooled = p.readInt() != 0;
 
+        PooledStringReader strings = pooled ? startReadingStrings(p) : null;
         int i = 0;
         while (i < N) {
             if (p.readInt() == 0) {
@@ -86,6 +92,9 @@ abstract class BaseParceledListSlice<T> implements Parcelable {
             if (DEBUG) Log.d(TAG, "Read inline #" + i + ": " + mList.get(mList.size()-1));
             i++;
         }
+        if (strings != null) {
+            strings.finish();
+        }
         if (i >= N) {
             return;
         }
@@ -101,6 +110,7 @@ abstract class BaseParceledListSlice<T> implements Parcelable {
                 Log.w(TAG, "Failure retrieving array; only received " + i + " of " + N, e);
                 return;
             }
+            strings = pooled ? startReadingStrings(reply) : null;
             while (i < N && reply.readInt() != 0) {
                 final T parcelable = readCreator(creator, reply, loader);
                 verifySameType(listElementClass, parcelable.getClass());
@@ -110,11 +120,26 @@ abstract class BaseParceledListSlice<T> implements Parcelable {
                 if (DEBUG) Log.d(TAG, "Read extra #" + i + ": " + mList.get(mList.size()-1));
                 i++;
             }
+            if (strings != null) {
+                strings.finish();
+            }
             reply.recycle();
             data.recycle();
         }
     }
 
+    private static PooledStringReader startReadingStrings(Parcel p) {
+        final PooledStringReader strings = new PooledStringReader(p);
+        strings.installAsHelper();
+        return strings;
+    }
+
+    private static PooledStringWriter startWritingStrings(Parcel p) {
+        final PooledStringWriter strings = new PooledStringWriter(p);
+        strings.installAsHelper();
+        return strings;
+    }
+
     private T readCreator(Parcelable.Creator<?> creator, Parcel p, ClassLoader loader) {
         if (creator instanceof Parcelable.ClassLoaderCreator<?>) {
             Parcelable.ClassLoaderCreator<?> classLoaderCreator =
@@ -144,6 +169,15 @@ abstract class BaseParceledListSlice<T> implements Parcelable {
         mInlineCountLimit = maxCount;
     }
 
+    /**
+     * Set whether strings written by the elements are deduplicated through a per-transaction
+     * string pool.  This makes the parcel smaller and faster to write and read when the
+     * elements repeat the same strings, e.g. package names and permissions.
+     */
+    public void setPoolStrings(boolean poolStrings) {
+        mPoolStrings = poolStrings;
+    }
+
     /**
      * Write this to another Parcel. Note that this discards the internal Parcel
      * and should not be used anymore. This is so we can pass this to a Binder
@@ -158,6 +192,10 @@ abstract class BaseParceledListSlice<T> implements Parcelable {
         if (N > 0) {
             final Class<?> listElementClass = mList.get(0).getClass();
             writeParcelableCreator(mList.get(0), dest);
+            // Don't interfere with a helper the caller installed.
+            final boolean pooled = mPoolStrings && !dest.hasReadWriteHelper();
+            dest.writeInt(pooled ? 1 : 0);
+            final PooledStringWriter strings = pooled ? startWritingStrings(dest) : null;
             int i = 0;
             while (i < N && i < mInlineCountLimit && dest.dataSize() < MAX_IPC_SIZE) {
                 dest.writeInt(1);
@@ -169,6 +207,9 @@ abstract class BaseParceledListSlice<T> implements Parcelable {
                 if (DEBUG) Log.d(TAG, "Wrote inline #" + i + ": " + mList.get(i));
                 i++;
             }
+            if (strings != null) {
+                strings.finish();
+            }
             if (i < N) {
                 dest.writeInt(0);
                 Binder retriever = new Binder() {
@@ -180,6 +221,8 @@ abstract class BaseParceledListSlice<T> implements Parcelable {
                         }
                         int i = data.readInt();
                         if (DEBUG) Log.d(TAG, "Writing more @" + i + " of " + N);
+                        final PooledStringWriter strings =
+                                pooled ? startWritingStrings(reply) : null;
                         while (i < N && reply.dataSize() < MAX_IPC_SIZE) {
                             reply.writeInt(1);
 
@@ -190,6 +233,9 @@ abstract class BaseParceledListSlice<T> implements Parcelable {
                             if (DEBUG) Log.d(TAG, "Wrote extra #" + i + ": " + mList.get(i));
                             i++;
                         }
+                        if (strings != null) {
+                            strings.finish();
+                        }
                         if (i < N) {
                             if (DEBUG) Log.d(TAG, "Breaking @" + i + " of " + N);
                             reply.writeInt(0);
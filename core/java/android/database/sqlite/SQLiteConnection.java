@@ -103,8 +103,17 @@ public final class SQLiteConnection implements CancellationSignal.OnCancelListen
     private final PreparedStatementCache mPreparedStatementCache;
     private PreparedStatement mPreparedStatementPool;
 
+    // Prepared statement cache activity since the cache size was last adjusted.
+    private int mCacheHitsSinceResize;
+    private int mCacheMissesSinceResize;
+    private int mCacheEvictionsAtResize;
+
+    // Statement statistics of this connection, merged with the other connections' by the pool.
+    private final SQLiteStatementStats mStatementStats =
+            new SQLiteStatementStats(SQLiteStatementStats.MAX_STATEMENTS);
+
     // The recent operations log.
-    private final OperationLog mRecentOperations = new OperationLog();
+    private final OperationLog mRecentOperations;
 
     // The native SQLiteConnection pointer.  (FOR INTERNAL USE ONLY)
     private long mConnectionPtr;
@@ -168,6 +177,7 @@ public final class SQLiteConnection implements CancellationSignal.OnCancelListen
         mIsReadOnlyConnection = (configuration.openFlags & SQLiteDatabase.OPEN_READONLY) != 0;
         mPreparedStatementCache = new PreparedStatementCache(
                 mConfiguration.maxSqlCacheSize);
+        mRecentOperations = new OperationLog(mStatementStats);
         mCloseGuard.open("close");
     }
 
@@ -420,7 +430,7 @@ public final class SQLiteConnection implements CancellationSignal.OnCancelListen
         mConfiguration.updateParametersFrom(configuration);
 
         // Update prepared statement cache size.
-        mPreparedStatementCache.resize(configuration.maxSqlCacheSize);
+        resizePreparedStatementCache(configuration.maxSqlCacheSize);
 
         // Update foreign key mode.
         if (foreignKeyModeChanged) {
@@ -879,15 +889,22 @@ public final class SQLiteConnection implements CancellationSignal.OnCancelListen
         boolean skipCache = false;
         if (statement != null) {
             if (!statement.mInUse) {
+                mCacheHitsSinceResize++;
+                mStatementStats.recordCacheHit(sql);
                 return statement;
             }
             // The statement is already in the cache but is in use (this statement appears
             // to be not only re-entrant but recursive!).  So prepare a new copy of the
             // statement but do not cache it.
             skipCache = true;
+        } else if (SQLiteGlobal.isAdaptiveStatementCacheEnabled()) {
+            mCacheMissesSinceResize++;
+            maybeGrowPreparedStatementCache();
         }
 
+        final long compileStartNanos = SystemClock.elapsedRealtimeNanos();
         final long statementPtr = nativePrepareStatement(mConnectionPtr, sql);
+        mStatementStats.recordCompile(sql, SystemClock.elapsedRealtimeNanos() - compileStartNanos);
         try {
             final int numParameters = nativeGetParameterCount(mConnectionPtr, statementPtr);
             final int type = DatabaseUtils.getSqlStatementType(sql);
@@ -909,6 +926,35 @@ public final class SQLiteConnection implements CancellationSignal.OnCancelListen
         return statement;
     }
 
+    /**
+     * Grows the prepared statement cache when the statements in use no longer fit. Only used
+     * when enabled by {@link SQLiteGlobal#isAdaptiveStatementCacheEnabled}, since it grows the
+     * cache past the size set by {@link SQLiteDatabase#setMaxSqlCacheSize}.
+     *
+     * Once as many statements as the cache holds have been evicted since the last resize and
+     * most lookups in that period missed, the working set is larger than the cache, so its
+     * size is doubled, up to {@link SQLiteDatabase#MAX_SQL_CACHE_SIZE}.
+     */
+    private void maybeGrowPreparedStatementCache() {
+        final int maxSize = mPreparedStatementCache.maxSize();
+        if (maxSize <= 0 || maxSize >= SQLiteDatabase.MAX_SQL_CACHE_SIZE
+                || mPreparedStatementCache.evictionCount() - mCacheEvictionsAtResize < maxSize) {
+            return;
+        }
+        if (mCacheMissesSinceResize > mCacheHitsSinceResize) {
+            resizePreparedStatementCache(Math.min(maxSize * 2, SQLiteDatabase.MAX_SQL_CACHE_SIZE));
+        } else {
+            resizePreparedStatementCache(maxSize);
+        }
+    }
+
+    private void resizePreparedStatementCache(int maxSize) {
+        mPreparedStatementCache.resize(maxSize);
+        mCacheHitsSinceResize = 0;
+        mCacheMissesSinceResize = 0;
+        mCacheEvictionsAtResize = mPreparedStatementCache.evictionCount();
+    }
+
     private void releasePreparedStatement(PreparedStatement statement) {
         statement.mInUse = false;
         if (statement.mInCache) {
@@ -1103,6 +1149,14 @@ public final class SQLiteConnection implements CancellationSignal.OnCancelListen
         return mRecentOperations.describeCurrentOperation();
     }
 
+    /**
+     * Adds the statement statistics of this connection to {@code target}. Safe to call while
+     * the connection is in use by another thread.
+     */
+    void collectStatementStats(SQLiteStatementStats target) {
+        mStatementStats.mergeInto(target);
+    }
+
     /**
      * Collects statistics about database connection memory usage.
      *
@@ -1203,7 +1257,7 @@ public final class SQLiteConnection implements CancellationSignal.OnCancelListen
         mPreparedStatementPool = statement;
     }
 
-    private static String trimSqlForDisplay(String sql) {
+    static String trimSqlForDisplay(String sql) {
         // Note: Creating and caching a regular expression is expensive at preload-time
         //       and stops compile-time initialization. This pattern is only used when
         //       dumping the connection, which is a rare (mainly error) case. So:
@@ -1296,9 +1350,14 @@ public final class SQLiteConnection implements CancellationSignal.OnCancelListen
         private static final int COOKIE_INDEX_MASK = 0xff;
 
         private final Operation[] mOperations = new Operation[MAX_RECENT_OPERATIONS];
+        private final SQLiteStatementStats mStatementStats;
         private int mIndex;
         private int mGeneration;
 
+        OperationLog(SQLiteStatementStats statementStats) {
+            mStatementStats = statementStats;
+        }
+
         public int beginOperation(String kind, String sql, Object[] bindArgs) {
             synchronized (mOperations) {
                 final int index = (mIndex + 1) % MAX_RECENT_OPERATIONS;
@@ -1315,6 +1374,7 @@ public final class SQLiteConnection implements CancellationSignal.OnCancelListen
                 }
                 operation.mStartWallTime = System.currentTimeMillis();
                 operation.mStartTime = SystemClock.uptimeMillis();
+                operation.mStartNanos = SystemClock.elapsedRealtimeNanos();
                 operation.mKind = kind;
                 operation.mSql = sql;
                 if (bindArgs != null) {
@@ -1381,6 +1441,12 @@ public final class SQLiteConnection implements CancellationSignal.OnCancelListen
                 }
                 operation.mEndTime = SystemClock.uptimeMillis();
                 operation.mFinished = true;
+                // Preparing only compiles the statement, which is recorded on its own.
+                if (operation.mSql != null && operation.mException == null
+                        && !"prepare".equals(operation.mKind)) {
+                    mStatementStats.recordExecution(operation.mSql,
+                            SystemClock.elapsedRealtimeNanos() - operation.mStartNanos);
+                }
                 return SQLiteDebug.DEBUG_LOG_SLOW_QUERIES && SQLiteDebug.shouldLogSlowQuery(
                                 operation.mEndTime - operation.mStartTime);
             }
@@ -1460,6 +1526,7 @@ public final class SQLiteConnection implements CancellationSignal.OnCancelListen
         public long mStartWallTime; // in System.currentTimeMillis()
         public long mStartTime; // in SystemClock.uptimeMillis();
         public long mEndTime; // in SystemClock.uptimeMillis();
+        public long mStartNanos; // in SystemClock.elapsedRealtimeNanos();
         public String mKind;
         public String mSql;
         public ArrayList<Object> mBindArgs;
@@ -86,6 +86,9 @@ public final class SQLiteConnectionPool implements Closeable {
 
     private final Object mLock = new Object();
     private final AtomicBoolean mConnectionLeaked = new AtomicBoolean();
+    // Statement statistics of connections that were closed, see collectStatementStatsLocked().
+    private final SQLiteStatementStats mClosedConnectionStatementStats =
+            new SQLiteStatementStats(SQLiteStatementStats.MAX_STATEMENTS);
     private final SQLiteDatabaseConfiguration mConfiguration;
     private int mMaxConnectionPoolSize;
     private boolean mIsOpen;
@@ -575,6 +578,7 @@ public final class SQLiteConnectionPool implements Closeable {
 
     // Can't throw.
     private void closeConnectionAndLogExceptionsLocked(SQLiteConnection connection) {
+        connection.collectStatementStats(mClosedConnectionStatementStats);
         try {
             connection.close(); // might throw
             if (mIdleConnectionHandler != null) {
@@ -1129,6 +1133,30 @@ public final class SQLiteConnectionPool implements Closeable {
                 indentedPrinter.println("<none>");
             }
         }
+        final SQLiteStatementStats statementStats;
+        synchronized (mLock) {
+            statementStats = collectStatementStatsLocked();
+        }
+        statementStats.dump(printer, verbose);
+    }
+
+    /**
+     * Merges the statement statistics of all connections, open or closed, so that a statement
+     * prepared on several connections is reported once.
+     */
+    private SQLiteStatementStats collectStatementStatsLocked() {
+        final SQLiteStatementStats stats = new SQLiteStatementStats(Integer.MAX_VALUE);
+        mClosedConnectionStatementStats.mergeInto(stats);
+        if (mAvailablePrimaryConnection != null) {
+            mAvailablePrimaryConnection.collectStatementStats(stats);
+        }
+        for (SQLiteConnection connection : mAvailableNonPrimaryConnections) {
+            connection.collectStatementStats(stats);
+        }
+        for (SQLiteConnection connection : mAcquiredConnections.keySet()) {
+            connection.collectStatementStats(stats);
+        }
+        return stats;
     }
 
     @Override
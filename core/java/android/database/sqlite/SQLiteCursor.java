@@ -54,6 +54,9 @@ public class SQLiteCursor extends AbstractWindowedCursor {
     /** The number of rows that can fit in the cursor window, 0 if unknown */
     private int mCursorWindowCapacity;
 
+    /** Whether windows are filled starting at the requested row, see setFillWindowForwardOnly */
+    private boolean mFillWindowForwardOnly;
+
     /** A mapping of column names to column indices, to speed up lookups */
     private Map<String, Integer> mColumnNameMap;
 
@@ -139,15 +142,17 @@ public class SQLiteCursor extends AbstractWindowedCursor {
 
         try {
             if (mCount == NO_COUNT) {
-                int startPos = DatabaseUtils.cursorPickFillWindowStartPosition(requiredPos, 0);
+                int startPos = mFillWindowForwardOnly ? requiredPos
+                        : DatabaseUtils.cursorPickFillWindowStartPosition(requiredPos, 0);
                 mCount = mQuery.fillWindow(mWindow, startPos, requiredPos, true);
                 mCursorWindowCapacity = mWindow.getNumRows();
                 if (Log.isLoggable(TAG, Log.DEBUG)) {
                     Log.d(TAG, "received count(*) from native_fill_window: " + mCount);
                 }
             } else {
-                int startPos = DatabaseUtils.cursorPickFillWindowStartPosition(requiredPos,
-                        mCursorWindowCapacity);
+                int startPos = mFillWindowForwardOnly ? requiredPos
+                        : DatabaseUtils.cursorPickFillWindowStartPosition(requiredPos,
+                                mCursorWindowCapacity);
                 mQuery.fillWindow(mWindow, startPos, requiredPos, false);
             }
         } catch (RuntimeException ex) {
@@ -160,6 +165,27 @@ public class SQLiteCursor extends AbstractWindowedCursor {
         }
     }
 
+    /**
+     * Controls where the window is filled from when the cursor moves past it.
+     * <p>
+     * By default a window is filled with rows on both sides of the requested position, so that
+     * moving backwards a few rows does not need another query. A cursor that is only ever moved
+     * forward, such as one scanning a large result from start to end, wastes up to a third of
+     * each window that way. Calling this with {@code true} fills each window starting at the
+     * requested row instead, which re-runs the query a third fewer times over a full
+     * scan. Combine with {@link #setWindow} and
+     * {@link android.database.CursorWindow#CursorWindow(String, long)} to prefetch more rows
+     * per fill.
+     * </p><p>
+     * This does not affect rows that are already in the window.
+     * </p>
+     *
+     * @param fillWindowForwardOnly whether windows should start at the requested row.
+     */
+    public void setFillWindowForwardOnly(boolean fillWindowForwardOnly) {
+        mFillWindowForwardOnly = fillWindowForwardOnly;
+    }
+
     @Override
     public int getColumnIndex(String columnName) {
         // Create mColumnNameMap on demand
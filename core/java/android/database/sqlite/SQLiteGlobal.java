@@ -137,4 +137,12 @@ public final class SQLiteGlobal {
                         com.android.internal.R.integer.db_default_idle_connection_timeout));
     }
 
+    /**
+     * Returns true if connections may grow their prepared statement cache past the configured
+     * size when it is too small for the statements in use. Off by default.
+     */
+    public static boolean isAdaptiveStatementCacheEnabled() {
+        return SystemProperties.getBoolean("debug.sqlite.adaptive_statement_cache", false);
+    }
+
 }
@@ -0,0 +1,163 @@
+/*
+ * Copyright (C) 2017 The Android Open Source Project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package android.database.sqlite;
+
+import android.util.Printer;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+/**
+ * Per statement compile and execution statistics.
+ *
+ * <p>Each {@link SQLiteConnection} records into its own instance, so connections used by
+ * different threads never contend. {@link SQLiteConnectionPool} merges them into a new instance
+ * by SQL text when dumping, so the same statement prepared on several connections is reported
+ * once. The lock only guards against a concurrent dump.</p>
+ *
+ * @hide
+ */
+final class SQLiteStatementStats {
+    // Bounds the memory used by databases that build SQL with inline literals.
+    static final int MAX_STATEMENTS = 100;
+
+    // Statements printed by a non verbose dump, most expensive first.
+    private static final int MAX_DUMPED_STATEMENTS = 10;
+
+    private static final class Entry {
+        final String sql;
+        int cacheHits;
+        int compiles;
+        long compileNanos;
+        int executions;
+        long executeNanos;
+        long maxExecuteNanos;
+
+        Entry(String sql) {
+            this.sql = sql;
+        }
+    }
+
+    private final int mMaxStatements;
+
+    // In least recently used order, so statements that are no longer used make room for new ones.
+    private final LinkedHashMap<String, Entry> mEntries;
+    private long mEvictedCount;
+
+    /**
+     * @param maxStatements The number of statements to keep, the least recently used one is
+     *        evicted to make room for a new one.
+     */
+    SQLiteStatementStats(int maxStatements) {
+        mMaxStatements = maxStatements;
+        mEntries = new LinkedHashMap<String, Entry>(16, 0.75f, true /* accessOrder */) {
+            @Override
+            protected boolean removeEldestEntry(Map.Entry<String, Entry> eldest) {
+                if (size() > mMaxStatements) {
+                    mEvictedCount++;
+                    return true;
+                }
+                return false;
+            }
+        };
+    }
+
+    private Entry getOrCreateEntryLocked(String sql) {
+        Entry entry = mEntries.get(sql);
+        if (entry == null) {
+            entry = new Entry(sql);
+            mEntries.put(sql, entry);
+        }
+        return entry;
+    }
+
+    /** Records that the connection found {@code sql} in its prepared statement cache. */
+    synchronized void recordCacheHit(String sql) {
+        getOrCreateEntryLocked(sql).cacheHits++;
+    }
+
+    /** Records that the connection had to compile {@code sql}, which took {@code nanos}. */
+    synchronized void recordCompile(String sql, long nanos) {
+        final Entry entry = getOrCreateEntryLocked(sql);
+        entry.compiles++;
+        entry.compileNanos += nanos;
+    }
+
+    /**
+     * Records one execution of {@code sql}, which took {@code nanos} including binding,
+     * stepping through the results and compiling the statement if it was not cached.
+     */
+    synchronized void recordExecution(String sql, long nanos) {
+        final Entry entry = getOrCreateEntryLocked(sql);
+        entry.executions++;
+        entry.executeNanos += nanos;
+        entry.maxExecuteNanos = Math.max(entry.maxExecuteNanos, nanos);
+    }
+
+    /** Adds the statistics recorded here to {@code target}. */
+    synchronized void mergeInto(SQLiteStatementStats target) {
+        synchronized (target) {
+            for (Entry entry : mEntries.values()) {
+                final Entry targetEntry = target.getOrCreateEntryLocked(entry.sql);
+                targetEntry.cacheHits += entry.cacheHits;
+                targetEntry.compiles += entry.compiles;
+                targetEntry.compileNanos += entry.compileNanos;
+                targetEntry.executions += entry.executions;
+                targetEntry.executeNanos += entry.executeNanos;
+                targetEntry.maxExecuteNanos = Math.max(targetEntry.maxExecuteNanos,
+                        entry.maxExecuteNanos);
+            }
+            target.mEvictedCount += mEvictedCount;
+        }
+    }
+
+    synchronized void dump(Printer printer, boolean verbose) {
+        printer.println("  Statement stats (times in us):");
+        if (mEntries.isEmpty()) {
+            printer.println("    <none>");
+            return;
+        }
+        final ArrayList<Entry> entries = new ArrayList<>(mEntries.values());
+        Collections.sort(entries, (left, right) -> Long.compare(
+                right.compileNanos + right.executeNanos, left.compileNanos + left.executeNanos));
+        final int count = verbose ? entries.size()
+                : Math.min(entries.size(), MAX_DUMPED_STATEMENTS);
+        for (int i = 0; i < count; i++) {
+            final Entry entry = entries.get(i);
+            final int lookups = entry.cacheHits + entry.compiles;
+            printer.println("    " + i + ": executions=" + entry.executions
+                    + ", avgExecute=" + average(entry.executeNanos, entry.executions)
+                    + ", maxExecute=" + entry.maxExecuteNanos / 1000
+                    + ", compiles=" + entry.compiles
+                    + ", avgCompile=" + average(entry.compileNanos, entry.compiles)
+                    + ", cacheHitRatio=" + (lookups == 0 ? 0 : entry.cacheHits * 100 / lookups)
+                    + "%, sql=\"" + SQLiteConnection.trimSqlForDisplay(entry.sql) + "\"");
+        }
+        if (count < entries.size()) {
+            printer.println("    (" + (entries.size() - count) + " more, use -v to see all)");
+        }
+        if (mEvictedCount > 0) {
+            printer.println("    (" + mEvictedCount + " statements evicted, too many statements)");
+        }
+    }
+
+    private static long average(long totalNanos, int count) {
+        return count == 0 ? 0 : totalNanos / count / 1000;
+    }
+}
@@ -0,0 +1,155 @@
+/*
+ * Copyright (C) 2017 The Android Open Source Project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package android.os;
+
+import android.util.ArrayMap;
+import android.util.Printer;
+
+/**
+ * Per handler class and message code histograms of how long messages waited in a
+ * {@link MessageQueue} past their delivery time and how long they took to dispatch.
+ *
+ * <p>Samples are recorded by the looper thread and may be dumped from any thread.</p>
+ *
+ * @hide
+ */
+final class DispatchLatencyStats {
+    // Bucket i counts samples in [2^(i-1), 2^i) ms, bucket 0 counts samples below 1ms and the
+    // last bucket everything from 2^(BUCKET_COUNT-2) ms on.
+    private static final int BUCKET_COUNT = 12;
+
+    // Bounds the memory used by loopers that see many distinct handlers.
+    private static final int MAX_ENTRIES = 256;
+
+    private static final class Key {
+        Class<?> mClass;
+        int mWhat;
+
+        @Override
+        public int hashCode() {
+            return 31 * mClass.hashCode() + mWhat;
+        }
+
+        @Override
+        public boolean equals(Object o) {
+            if (!(o instanceof Key)) return false;
+            final Key other = (Key) o;
+            return mClass == other.mClass && mWhat == other.mWhat;
+        }
+    }
+
+    private static final class Entry {
+        final int[] waitBuckets = new int[BUCKET_COUNT];
+        final int[] dispatchBuckets = new int[BUCKET_COUNT];
+        long count;
+        long totalWaitMs;
+        long totalDispatchMs;
+        long maxWaitMs;
+        long maxDispatchMs;
+    }
+
+    private final ArrayMap<Key, Entry> mEntries = new ArrayMap<>();
+    // Reused for lookups so that recording a sample for a known handler does not allocate.
+    private final Key mProbe = new Key();
+    private long mDroppedCount;
+
+    /**
+     * Records one dispatched message.
+     *
+     * @param msg The message, which must not have been recycled yet.
+     * @param waitMs How long the message waited past its delivery time.
+     * @param dispatchMs How long the message took to dispatch.
+     */
+    void record(Message msg, long waitMs, long dispatchMs) {
+        final Class<?> clazz = msg.callback != null ? msg.callback.getClass()
+                : msg.target.getClass();
+        synchronized (this) {
+            mProbe.mClass = clazz;
+            mProbe.mWhat = msg.what;
+            Entry entry = mEntries.get(mProbe);
+            mProbe.mClass = null;
+            if (entry == null) {
+                if (mEntries.size() >= MAX_ENTRIES) {
+                    mDroppedCount++;
+                    return;
+                }
+                final Key key = new Key();
+                key.mClass = clazz;
+                key.mWhat = msg.what;
+                entry = new Entry();
+                mEntries.put(key, entry);
+            }
+            entry.count++;
+            entry.waitBuckets[bucketOf(waitMs)]++;
+            entry.dispatchBuckets[bucketOf(dispatchMs)]++;
+            entry.totalWaitMs += waitMs;
+            entry.totalDispatchMs += dispatchMs;
+            entry.maxWaitMs = Math.max(entry.maxWaitMs, waitMs);
+            entry.maxDispatchMs = Math.max(entry.maxDispatchMs, dispatchMs);
+        }
+    }
+
+    private static int bucketOf(long ms) {
+        if (ms <= 0) {
+            return 0;
+        }
+        final int bucket = 64 - Long.numberOfLeadingZeros(ms);
+        return Math.min(bucket, BUCKET_COUNT - 1);
+    }
+
+    synchronized void reset() {
+        mEntries.clear();
+        mDroppedCount = 0;
+    }
+
+    synchronized void dump(Printer pw, String prefix) {
+        pw.println(prefix + "Dispatch latency (ms, buckets <1,<2,<4,..,>="
+                + (1 << (BUCKET_COUNT - 2)) + "):");
+        final String innerPrefix = prefix + "  ";
+        final StringBuilder sb = new StringBuilder();
+        for (int i = 0; i < mEntries.size(); i++) {
+            final Key key = mEntries.keyAt(i);
+            final Entry entry = mEntries.valueAt(i);
+            sb.setLength(0);
+            sb.append(innerPrefix).append(key.mClass.getName()).append(" what=").append(key.mWhat)
+                    .append(": count=").append(entry.count)
+                    .append(" wait avg=").append(entry.totalWaitMs / entry.count)
+                    .append(" max=").append(entry.maxWaitMs)
+                    .append(" dispatch avg=").append(entry.totalDispatchMs / entry.count)
+                    .append(" max=").append(entry.maxDispatchMs);
+            pw.println(sb.toString());
+            sb.setLength(0);
+            sb.append(innerPrefix).append("  wait=");
+            appendBuckets(sb, entry.waitBuckets);
+            sb.append(" dispatch=");
+            appendBuckets(sb, entry.dispatchBuckets);
+            pw.println(sb.toString());
+        }
+        if (mDroppedCount > 0) {
+            pw.println(innerPrefix + "(" + mDroppedCount + " samples dropped, too many handlers)");
+        }
+    }
+
+    private static void appendBuckets(StringBuilder sb, int[] buckets) {
+        sb.append('[');
+        for (int i = 0; i < buckets.length; i++) {
+            if (i > 0) sb.append(',');
+            sb.append(buckets[i]);
+        }
+        sb.append(']');
+    }
+}
@@ -80,6 +80,12 @@ public final class Looper {
     /* If set, the looper will show a warning log if a message dispatch takes longer than time. */
     private long mSlowDispatchThresholdMs;
 
+    /* If set, queue wait and dispatch times are recorded per handler and message code. */
+    private volatile DispatchLatencyStats mLatencyStats;
+
+    /* If set, notified of the start and end of every message dispatch. */
+    private volatile Observer mObserver;
+
      /** Initialize the current thread as a looper.
       * This gives you a chance to create handlers that then reference
       * this looper, before actually starting the loop. Be sure to call
@@ -153,16 +159,23 @@ public final class Looper {
             }
 
             final long slowDispatchThresholdMs = me.mSlowDispatchThresholdMs;
+            final DispatchLatencyStats latencyStats = me.mLatencyStats;
+            final Observer observer = me.mObserver;
+            final boolean needTimes = slowDispatchThresholdMs != 0 || latencyStats != null
+                    || observer != null;
 
             final long traceTag = me.mTraceTag;
             if (traceTag != 0 && Trace.isTagEnabled(traceTag)) {
                 Trace.traceBegin(traceTag, msg.target.getTraceName(msg));
             }
-            final long start = (slowDispatchThresholdMs == 0) ? 0 : SystemClock.uptimeMillis();
+            final long start = needTimes ? SystemClock.uptimeMillis() : 0;
+            if (observer != null) {
+                observer.messageDispatchStarting(msg, start);
+            }
             final long end;
             try {
                 msg.target.dispatchMessage(msg);
-                end = (slowDispatchThresholdMs == 0) ? 0 : SystemClock.uptimeMillis();
+                end = needTimes ? SystemClock.uptimeMillis() : 0;
             } finally {
                 if (traceTag != 0) {
                     Trace.traceEnd(traceTag);
@@ -176,6 +189,14 @@ public final class Looper {
                             msg.target + " cb=" + msg.callback + " msg=" + msg.what);
                 }
             }
+            if (observer != null) {
+                observer.messageDispatched(msg, start, end);
+            }
+            if (latencyStats != null) {
+                // Messages posted at the front of the queue have no delivery time.
+                final long waitMs = msg.when == 0 ? 0 : Math.max(0, start - msg.when);
+                latencyStats.record(msg, waitMs, end - start);
+            }
 
             if (logging != null) {
                 logging.println("<<<<< Finished to " + msg.target + " " + msg.callback);
@@ -248,6 +269,37 @@ public final class Looper {
         mSlowDispatchThresholdMs = slowDispatchThresholdMs;
     }
 
+    /**
+     * Sets the observer notified of message dispatches on this looper, replacing any previous
+     * one, or removes it if {@code observer} is null.
+     *
+     * {@hide}
+     */
+    public void setObserver(@Nullable Observer observer) {
+        mObserver = observer;
+    }
+
+    /** {@hide} */
+    public @Nullable Observer getObserver() {
+        return mObserver;
+    }
+
+    /**
+     * Enables or disables recording of per handler queue wait and dispatch time histograms,
+     * which are printed by {@link #dump}. Disabling discards the recorded data.
+     *
+     * {@hide}
+     */
+    public void setDispatchLatencyStatsEnabled(boolean enabled) {
+        if (enabled) {
+            if (mLatencyStats == null) {
+                mLatencyStats = new DispatchLatencyStats();
+            }
+        } else {
+            mLatencyStats = null;
+        }
+    }
+
     /**
      * Quits the looper.
      * <p>
@@ -311,6 +363,7 @@ public final class Looper {
     public void dump(@NonNull Printer pw, @NonNull String prefix) {
         pw.println(prefix + toString());
         mQueue.dump(pw, prefix + "  ", null);
+        dumpLatencyStats(pw, prefix + "  ");
     }
 
     /**
@@ -324,6 +377,14 @@ public final class Looper {
     public void dump(@NonNull Printer pw, @NonNull String prefix, Handler handler) {
         pw.println(prefix + toString());
         mQueue.dump(pw, prefix + "  ", handler);
+        dumpLatencyStats(pw, prefix + "  ");
+    }
+
+    private void dumpLatencyStats(Printer pw, String prefix) {
+        final DispatchLatencyStats latencyStats = mLatencyStats;
+        if (latencyStats != null) {
+            latencyStats.dump(pw, prefix);
+        }
     }
 
     /** @hide */
@@ -336,6 +397,36 @@ public final class Looper {
         proto.end(looperToken);
     }
 
+    /**
+     * Observes message dispatches of a {@link Looper}.
+     *
+     * <p>Unlike the {@link Printer} set with {@link #setMessageLogging}, an observer receives
+     * the message itself, so no description of it has to be built unless the observer decides
+     * it needs one. Both methods are called on the looper thread for every message and must
+     * be cheap; in particular they should not allocate. The message must not be retained, as it
+     * is recycled after dispatch.</p>
+     *
+     * {@hide}
+     */
+    public interface Observer {
+        /**
+         * Called right before a message is dispatched to its target.
+         *
+         * @param msg The message about to be dispatched.
+         * @param startUptimeMs The {@link SystemClock#uptimeMillis} the dispatch started at.
+         */
+        void messageDispatchStarting(Message msg, long startUptimeMs);
+
+        /**
+         * Called after a message has been dispatched to its target without throwing.
+         *
+         * @param msg The dispatched message.
+         * @param startUptimeMs The {@link SystemClock#uptimeMillis} the dispatch started at.
+         * @param endUptimeMs The {@link SystemClock#uptimeMillis} the dispatch ended at.
+         */
+        void messageDispatched(Message msg, long startUptimeMs, long endUptimeMs);
+    }
+
     @Override
     public String toString() {
         return "Looper (" + mThread.getName() + ", tid " + mThread.getId()
@@ -48,6 +48,10 @@ public final class MessageQueue {
     private long mPtr; // used by native code
 
     Message mMessages;
+    // The last message of the mMessages list, or null if unknown. Messages are usually posted
+    // with increasing delivery times, so this lets enqueueMessage() append without walking the
+    // whole list. It is cleared whenever messages are removed from the middle of the list.
+    private Message mLast;
     private final ArrayList<IdleHandler> mIdleHandlers = new ArrayList<IdleHandler>();
     private SparseArray<FileDescriptorRecord> mFileDescriptorRecords;
     private IdleHandler[] mPendingIdleHandlers;
@@ -348,6 +352,9 @@ public final class MessageQueue {
                         } else {
                             mMessages = msg.next;
                         }
+                        if (mLast == msg) {
+                            mLast = prevMsg;
+                        }
                         msg.next = null;
                         if (DEBUG) Log.v(TAG, "Returning message: " + msg);
                         msg.markInUse();
@@ -486,6 +493,9 @@ public final class MessageQueue {
                 msg.next = p;
                 mMessages = msg;
             }
+            if (p == null) {
+                mLast = msg;
+            }
             return token;
         }
     }
@@ -515,6 +525,9 @@ public final class MessageQueue {
                         + " barrier token has not been posted or has already been removed.");
             }
             final boolean needWake;
+            if (mLast == p) {
+                mLast = prev;
+            }
             if (prev != null) {
                 prev.next = p.next;
                 needWake = false;
@@ -558,6 +571,18 @@ public final class MessageQueue {
                 msg.next = p;
                 mMessages = msg;
                 needWake = mBlocked;
+                if (p == null) {
+                    mLast = msg;
+                }
+            } else if (mLast != null && when >= mLast.when
+                    && !(mBlocked && p.target == null && msg.isAsynchronous())) {
+                // Appended after the last message.  Same as inserting within the middle of
+                // the queue below, but without walking it; there is no need to wake up the
+                // event queue as the message cannot be the earliest asynchronous message.
+                msg.next = null;
+                mLast.next = msg;
+                mLast = msg;
+                needWake = false;
             } else {
                 // Inserted within the middle of the queue.  Usually we don't have to wake
                 // up the event queue unless there is a barrier at the head of the queue
@@ -576,6 +601,9 @@ public final class MessageQueue {
                 }
                 msg.next = p; // invariant: p == prev.next
                 prev.next = msg;
+                if (p == null) {
+                    mLast = msg;
+                }
             }
 
             // We can assume mPtr != 0 because mQuitting is false.
@@ -643,6 +671,8 @@ public final class MessageQueue {
         }
 
         synchronized (this) {
+            // Messages may be removed from anywhere, including the end of the list.
+            mLast = null;
             Message p = mMessages;
 
             // Remove all messages at front.
@@ -677,6 +707,8 @@ public final class MessageQueue {
         }
 
         synchronized (this) {
+            // Messages may be removed from anywhere, including the end of the list.
+            mLast = null;
             Message p = mMessages;
 
             // Remove all messages at front.
@@ -711,6 +743,8 @@ public final class MessageQueue {
         }
 
         synchronized (this) {
+            // Messages may be removed from anywhere, including the end of the list.
+            mLast = null;
             Message p = mMessages;
 
             // Remove all messages at front.
@@ -746,6 +780,7 @@ public final class MessageQueue {
             p = n;
         }
         mMessages = null;
+        mLast = null;
     }
 
     private void removeAllFutureMessagesLocked() {
@@ -767,6 +802,7 @@ public final class MessageQueue {
                     p = n;
                 }
                 p.next = null;
+                mLast = p;
                 do {
                     p = n;
                     n = p.next;
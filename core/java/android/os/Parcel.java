@@ -423,6 +423,16 @@ public final class Parcel {
         mReadWriteHelper = helper != null ? helper : ReadWriteHelper.DEFAULT;
     }
 
+    /**
+     * @return the {@link ReadWriteHelper} of this parcel, {@link ReadWriteHelper#DEFAULT} if
+     * none was set.
+     *
+     * @hide
+     */
+    public ReadWriteHelper getReadWriteHelper() {
+        return mReadWriteHelper;
+    }
+
     /**
      * @return whether this parcel has a {@link ReadWriteHelper}.
      *
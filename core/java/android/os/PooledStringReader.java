@@ -30,6 +30,16 @@ public class PooledStringReader {
      */
     private final String[] mPool;
 
+    /**
+     * Non-null while this reader is installed as the parcel's {@link Parcel.ReadWriteHelper}.
+     */
+    private Parcel.ReadWriteHelper mHelper;
+
+    /**
+     * The helper the parcel had before this reader was installed, restored by {@link #finish}.
+     */
+    private Parcel.ReadWriteHelper mPreviousHelper;
+
     public PooledStringReader(Parcel in) {
         mIn = in;
         final int size = in.readInt();
@@ -46,9 +56,36 @@ public class PooledStringReader {
             return mPool[idx];
         } else {
             idx = (-idx) - 1;
-            String str = mIn.readString();
+            String str = mIn.readStringNoHelper();
             mPool[idx] = str;
             return str;
         }
     }
+
+    /**
+     * Routes every {@link Parcel#readString} on the parcel through this pool until
+     * {@link #finish} is called, which puts back the helper the parcel had before.  See
+     * {@link PooledStringWriter#installAsHelper}.
+     */
+    public void installAsHelper() {
+        mPreviousHelper = mIn.getReadWriteHelper();
+        mHelper = new Parcel.ReadWriteHelper() {
+            @Override
+            public String readString(Parcel p) {
+                return PooledStringReader.this.readString();
+            }
+        };
+        mIn.setReadWriteHelper(mHelper);
+    }
+
+    /**
+     * Uninstalls this reader from the parcel if it was installed with {@link #installAsHelper}.
+     */
+    public void finish() {
+        if (mHelper != null) {
+            mIn.setReadWriteHelper(mPreviousHelper);
+            mHelper = null;
+            mPreviousHelper = null;
+        }
+    }
 }
@@ -48,6 +48,16 @@ public class PooledStringWriter {
      */
     private int mNext;
 
+    /**
+     * Non-null while this writer is installed as the parcel's {@link Parcel.ReadWriteHelper}.
+     */
+    private Parcel.ReadWriteHelper mHelper;
+
+    /**
+     * The helper the parcel had before this writer was installed, restored by {@link #finish}.
+     */
+    private Parcel.ReadWriteHelper mPreviousHelper;
+
     public PooledStringWriter(Parcel out) {
         mOut = out;
         mPool = new HashMap<>();
@@ -62,7 +72,7 @@ public class PooledStringWriter {
         } else {
             mPool.put(str, mNext);
             mOut.writeInt(-(mNext+1));
-            mOut.writeString(str);
+            mOut.writeStringNoHelper(str);
             mNext++;
         }
     }
@@ -71,7 +81,29 @@ public class PooledStringWriter {
         return mPool.size();
     }
 
+    /**
+     * Routes every {@link Parcel#writeString} on the parcel through this pool until
+     * {@link #finish} is called, so that nested objects written with their own
+     * writeToParcel() share the pool as well.  {@link #finish} puts back the helper the parcel
+     * had before.  Must be matched by {@link PooledStringReader#installAsHelper} when reading.
+     */
+    public void installAsHelper() {
+        mPreviousHelper = mOut.getReadWriteHelper();
+        mHelper = new Parcel.ReadWriteHelper() {
+            @Override
+            public void writeString(Parcel p, String s) {
+                PooledStringWriter.this.writeString(s);
+            }
+        };
+        mOut.setReadWriteHelper(mHelper);
+    }
+
     public void finish() {
+        if (mHelper != null) {
+            mOut.setReadWriteHelper(mPreviousHelper);
+            mHelper = null;
+            mPreviousHelper = null;
+        }
         final int pos = mOut.dataPosition();
         mOut.setDataPosition(mStart);
         mOut.writeInt(mNext);
@@ -288,12 +288,30 @@ public class BoringLayout extends Layout implements TextUtils.EllipsizeCallback
             fm.reset();
         }
 
+        final boolean cacheable = TextMeasureCache.isCacheable(text, 0, textLength, paint);
+        if (cacheable) {
+            final TextMeasureCache.Entry entry =
+                    TextMeasureCache.get(text, 0, textLength, paint, textDir, true);
+            if (entry != null) {
+                fm.top = entry.metrics.top;
+                fm.ascent = entry.metrics.ascent;
+                fm.descent = entry.metrics.descent;
+                fm.bottom = entry.metrics.bottom;
+                fm.leading = entry.metrics.leading;
+                fm.width = (int) entry.width;
+                return fm;
+            }
+        }
+
         TextLine line = TextLine.obtain();
         line.set(paint, text, 0, textLength, Layout.DIR_LEFT_TO_RIGHT,
                 Layout.DIRS_ALL_LEFT_TO_RIGHT, false, null);
         fm.width = (int) Math.ceil(line.metrics(fm));
         TextLine.recycle(line);
 
+        if (cacheable) {
+            TextMeasureCache.put(text, 0, textLength, paint, textDir, fm.width, fm);
+        }
         return fm;
     }
 
@@ -1841,6 +1841,23 @@ public abstract class Layout {
     /* package */
     static float measurePara(TextPaint paint, CharSequence text, int start, int end,
             TextDirectionHeuristic textDir) {
+        final boolean cacheable = TextMeasureCache.isCacheable(text, start, end, paint);
+        if (cacheable) {
+            final TextMeasureCache.Entry entry =
+                    TextMeasureCache.get(text, start, end, paint, textDir, false);
+            if (entry != null) {
+                return entry.width;
+            }
+        }
+        final float width = measureParaUncached(paint, text, start, end, textDir);
+        if (cacheable) {
+            TextMeasureCache.put(text, start, end, paint, textDir, width, null);
+        }
+        return width;
+    }
+
+    private static float measureParaUncached(TextPaint paint, CharSequence text, int start,
+            int end, TextDirectionHeuristic textDir) {
         MeasuredText mt = MeasuredText.obtain();
         TextLine tl = TextLine.obtain();
         try {
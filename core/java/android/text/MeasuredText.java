@@ -45,18 +45,20 @@ class MeasuredText {
         mWorkPaint = new TextPaint();
     }
 
-    private static final Object[] sLock = new Object[0];
-    private static final MeasuredText[] sCached = new MeasuredText[3];
+    private static final int POOL_SIZE = 3;
+
+    // Pooled per thread, see TextLine#obtain().
+    private static final ThreadLocal<MeasuredText[]> sCached =
+            ThreadLocal.withInitial(() -> new MeasuredText[POOL_SIZE]);
 
     static MeasuredText obtain() {
+        final MeasuredText[] cached = sCached.get();
         MeasuredText mt;
-        synchronized (sLock) {
-            for (int i = sCached.length; --i >= 0;) {
-                if (sCached[i] != null) {
-                    mt = sCached[i];
-                    sCached[i] = null;
-                    return mt;
-                }
+        for (int i = cached.length; --i >= 0;) {
+            if (cached[i] != null) {
+                mt = cached[i];
+                cached[i] = null;
+                return mt;
             }
         }
         mt = new MeasuredText();
@@ -68,13 +70,12 @@ class MeasuredText {
 
     static MeasuredText recycle(MeasuredText mt) {
         mt.finish();
-        synchronized(sLock) {
-            for (int i = 0; i < sCached.length; ++i) {
-                if (sCached[i] == null) {
-                    sCached[i] = mt;
-                    mt.mText = null;
-                    break;
-                }
+        final MeasuredText[] cached = sCached.get();
+        for (int i = 0; i < cached.length; ++i) {
+            if (cached[i] == null) {
+                cached[i] = mt;
+                mt.mText = null;
+                break;
             }
         }
         return null;
@@ -0,0 +1,296 @@
+/*
+ * Copyright (C) 2017 The Android Open Source Project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package android.text;
+
+import android.annotation.IntRange;
+import android.annotation.NonNull;
+import android.annotation.Nullable;
+import android.text.Layout.Alignment;
+
+import com.android.internal.util.Preconditions;
+
+import java.util.Objects;
+
+/**
+ * An immutable, measured and line-broken piece of text that a
+ * {@link android.widget.TextView} can display without measuring it again.
+ *
+ * <p>Measuring and breaking long text into lines is expensive, and a TextView normally does it
+ * on the UI thread while it is being measured. A PrecomputedLayout does the same work ahead of
+ * time, so it can be built on a background thread and handed to
+ * {@link android.widget.TextView#setPrecomputedLayout} once it is ready:</p>
+ *
+ * <pre>
+ * executor.execute(() -&gt; {
+ *     final PrecomputedLayout precomputed =
+ *             new PrecomputedLayout.Builder(text, textView.getPaint(), width).build();
+ *     textView.post(() -&gt; textView.setPrecomputedLayout(precomputed));
+ * });
+ * </pre>
+ *
+ * <p>The parameters given to the {@link Builder} must match the TextView's own configuration
+ * (text paint, available width, alignment, line spacing, break strategy and so on). If they do
+ * not, the TextView silently falls back to laying the text out itself.</p>
+ *
+ * <p>Only text that cannot be modified may be precomputed, i.e. it must not implement
+ * {@link Spannable}.</p>
+ */
+public final class PrecomputedLayout {
+
+    /**
+     * Builder for precomputed layouts. Parameters not explicitly set get the same default values
+     * as {@link StaticLayout.Builder}.
+     */
+    public static final class Builder {
+        private final CharSequence mText;
+        private final TextPaint mPaint;
+        private final int mWidth;
+        private Alignment mAlignment = Alignment.ALIGN_NORMAL;
+        private TextDirectionHeuristic mTextDir = TextDirectionHeuristics.FIRSTSTRONG_LTR;
+        private float mSpacingMult = 1.0f;
+        private float mSpacingAdd = 0.0f;
+        private boolean mIncludePad = true;
+        private int mMaxLines = Integer.MAX_VALUE;
+        private int mBreakStrategy = Layout.BREAK_STRATEGY_SIMPLE;
+        private int mHyphenationFrequency = Layout.HYPHENATION_FREQUENCY_NONE;
+        private int mJustificationMode = Layout.JUSTIFICATION_MODE_NONE;
+
+        /**
+         * @param text The text to be laid out, optionally with spans. Must not be
+         *             {@link Spannable}.
+         * @param paint The base paint used for layout. It is copied, so later changes to it do
+         *              not affect the result.
+         * @param width The width in pixels
+         */
+        public Builder(@NonNull CharSequence text, @NonNull TextPaint paint,
+                @IntRange(from = 0) int width) {
+            Preconditions.checkNotNull(text);
+            Preconditions.checkNotNull(paint);
+            if (text instanceof Spannable) {
+                throw new IllegalArgumentException("Spannable text cannot be precomputed");
+            }
+            if (width < 0) {
+                throw new IllegalArgumentException("width must not be negative: " + width);
+            }
+            mText = text;
+            mPaint = new TextPaint();
+            mPaint.set(paint);
+            mWidth = width;
+        }
+
+        /** @see StaticLayout.Builder#setAlignment */
+        public Builder setAlignment(@NonNull Alignment alignment) {
+            mAlignment = Preconditions.checkNotNull(alignment);
+            return this;
+        }
+
+        /** @see StaticLayout.Builder#setTextDirection */
+        public Builder setTextDirection(@NonNull TextDirectionHeuristic textDir) {
+            mTextDir = Preconditions.checkNotNull(textDir);
+            return this;
+        }
+
+        /** @see StaticLayout.Builder#setLineSpacing */
+        public Builder setLineSpacing(float spacingAdd, float spacingMult) {
+            mSpacingAdd = spacingAdd;
+            mSpacingMult = spacingMult;
+            return this;
+        }
+
+        /** @see StaticLayout.Builder#setIncludePad */
+        public Builder setIncludePad(boolean includePad) {
+            mIncludePad = includePad;
+            return this;
+        }
+
+        /** @see StaticLayout.Builder#setMaxLines */
+        public Builder setMaxLines(@IntRange(from = 0) int maxLines) {
+            mMaxLines = maxLines;
+            return this;
+        }
+
+        /** @see StaticLayout.Builder#setBreakStrategy */
+        public Builder setBreakStrategy(@Layout.BreakStrategy int breakStrategy) {
+            mBreakStrategy = breakStrategy;
+            return this;
+        }
+
+        /** @see StaticLayout.Builder#setHyphenationFrequency */
+        public Builder setHyphenationFrequency(
+                @Layout.HyphenationFrequency int hyphenationFrequency) {
+            mHyphenationFrequency = hyphenationFrequency;
+            return this;
+        }
+
+        /** @see StaticLayout.Builder#setJustificationMode */
+        public Builder setJustificationMode(@Layout.JustificationMode int justificationMode) {
+            mJustificationMode = justificationMode;
+            return this;
+        }
+
+        /**
+         * Measures the text and breaks it into lines. This is the expensive part and may be
+         * called on any thread.
+         */
+        @NonNull
+        public PrecomputedLayout build() {
+            final StaticLayout layout = StaticLayout.Builder.obtain(mText, 0, mText.length(),
+                    mPaint, mWidth)
+                    .setAlignment(mAlignment)
+                    .setTextDirection(mTextDir)
+                    .setLineSpacing(mSpacingAdd, mSpacingMult)
+                    .setIncludePad(mIncludePad)
+                    .setBreakStrategy(mBreakStrategy)
+                    .setHyphenationFrequency(mHyphenationFrequency)
+                    .setJustificationMode(mJustificationMode)
+                    .setMaxLines(mMaxLines)
+                    .build();
+            final float desiredWidth = Layout.getDesiredWidth(mText, 0, mText.length(), mPaint,
+                    mTextDir);
+            return new PrecomputedLayout(this, layout, desiredWidth);
+        }
+    }
+
+    private final CharSequence mText;
+    private final TextPaint mPaint;
+    private final int mWidth;
+    private final Alignment mAlignment;
+    private final TextDirectionHeuristic mTextDir;
+    private final float mSpacingMult;
+    private final float mSpacingAdd;
+    private final boolean mIncludePad;
+    private final int mMaxLines;
+    private final int mBreakStrategy;
+    private final int mHyphenationFrequency;
+    private final int mJustificationMode;
+    private final StaticLayout mLayout;
+    private final float mDesiredWidth;
+
+    // The paint the layout has been handed over to, see #adoptLayout().
+    private TextPaint mOwnerPaint;
+
+    private PrecomputedLayout(Builder b, StaticLayout layout, float desiredWidth) {
+        mText = b.mText;
+        mPaint = b.mPaint;
+        mWidth = b.mWidth;
+        mAlignment = b.mAlignment;
+        mTextDir = b.mTextDir;
+        mSpacingMult = b.mSpacingMult;
+        mSpacingAdd = b.mSpacingAdd;
+        mIncludePad = b.mIncludePad;
+        mMaxLines = b.mMaxLines;
+        mBreakStrategy = b.mBreakStrategy;
+        mHyphenationFrequency = b.mHyphenationFrequency;
+        mJustificationMode = b.mJustificationMode;
+        mLayout = layout;
+        mDesiredWidth = desiredWidth;
+    }
+
+    /**
+     * Returns the text this layout was computed for.
+     */
+    @NonNull
+    public CharSequence getText() {
+        return mText;
+    }
+
+    /**
+     * Returns the width this layout was computed for.
+     */
+    public int getWidth() {
+        return mWidth;
+    }
+
+    /**
+     * Returns how wide a layout must be in order to display the text with one line per
+     * paragraph, as {@link Layout#getDesiredWidth} would.
+     */
+    public float getDesiredWidth() {
+        return mDesiredWidth;
+    }
+
+    /**
+     * Returns true if {@link #getDesiredWidth()} is valid for the given text, paint and
+     * direction.
+     *
+     * @hide
+     */
+    public boolean isDesiredWidthValid(@NonNull CharSequence text, @NonNull TextPaint paint,
+            @NonNull TextDirectionHeuristic textDir) {
+        return text == mText && textDir == mTextDir && hasEqualMetricAttributes(paint, mPaint);
+    }
+
+    /**
+     * Hands the precomputed layout over to a TextView, if it was computed with exactly the given
+     * parameters. The returned layout draws with the given paint from then on.
+     *
+     * <p>A precomputed layout can only be adopted by one owner; other callers get null, as does
+     * any call with parameters that differ from the ones the layout was computed with.</p>
+     *
+     * @hide
+     */
+    @Nullable
+    public synchronized Layout adoptLayout(@NonNull CharSequence text, @NonNull TextPaint paint,
+            int width, @NonNull Alignment alignment, @NonNull TextDirectionHeuristic textDir,
+            float spacingMult, float spacingAdd, boolean includePad, int maxLines,
+            int breakStrategy, int hyphenationFrequency, int justificationMode) {
+        if (mOwnerPaint != null && mOwnerPaint != paint) {
+            return null;
+        }
+        if (text != mText
+                || width != mWidth
+                || alignment != mAlignment
+                || textDir != mTextDir
+                || spacingMult != mSpacingMult
+                || spacingAdd != mSpacingAdd
+                || includePad != mIncludePad
+                || maxLines != mMaxLines
+                || breakStrategy != mBreakStrategy
+                || hyphenationFrequency != mHyphenationFrequency
+                || justificationMode != mJustificationMode
+                || !hasEqualMetricAttributes(paint, mPaint)) {
+            return null;
+        }
+        if (mOwnerPaint == null) {
+            mLayout.replaceWith(mText, paint, mWidth, mAlignment, mSpacingMult, mSpacingAdd);
+            mOwnerPaint = paint;
+        }
+        return mLayout;
+    }
+
+    /**
+     * Compares only the paint attributes that affect measurement, so that state such as the text
+     * color, which the owning view changes while drawing, does not invalidate a precomputed
+     * layout.
+     */
+    private static boolean hasEqualMetricAttributes(TextPaint a, TextPaint b) {
+        return a.getTypeface() == b.getTypeface()
+                && a.getTextSize() == b.getTextSize()
+                && a.getTextScaleX() == b.getTextScaleX()
+                && a.getTextSkewX() == b.getTextSkewX()
+                && a.getLetterSpacing() == b.getLetterSpacing()
+                && a.getWordSpacing() == b.getWordSpacing()
+                && a.getFlags() == b.getFlags()
+                && a.getHinting() == b.getHinting()
+                && a.getHyphenEdit() == b.getHyphenEdit()
+                && a.isElegantTextHeight() == b.isElegantTextHeight()
+                && a.getTextLocales().equals(b.getTextLocales())
+                && Objects.equals(a.getFontFeatureSettings(), b.getFontFeatureSettings())
+                && Objects.equals(a.getFontVariationSettings(), b.getFontVariationSettings())
+                && a.baselineShift == b.baselineShift;
+    }
+}
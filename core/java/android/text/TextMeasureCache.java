@@ -0,0 +1,175 @@
+/*
+ * Copyright (C) 2017 The Android Open Source Project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package android.text;
+
+import android.annotation.NonNull;
+import android.annotation.Nullable;
+import android.graphics.Paint;
+
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.Objects;
+
+/**
+ * A small, per-thread LRU cache of text measurements.
+ *
+ * <p>Only immutable {@link String} content measured with a plain {@link TextPaint} is cached, so
+ * that a cached entry can never go stale behind the caller's back. Entries are keyed by the
+ * measured range, the paint attributes and the text direction heuristic, which lets layouts that
+ * are rebuilt for the same content (e.g. list items being rebound) skip re-measuring it.</p>
+ *
+ * @hide
+ */
+class TextMeasureCache {
+    private static final int MAX_ENTRIES = 64;
+
+    // Longer strings are unlikely to be rebound verbatim and would make the key comparison costly.
+    private static final int MAX_TEXT_LENGTH = 256;
+
+    private static final ThreadLocal<TextMeasureCache> sCache =
+            ThreadLocal.withInitial(() -> new TextMeasureCache());
+
+    /**
+     * Cached result of a measurement. {@code metrics} is only set for entries that were stored
+     * together with font metrics.
+     */
+    static final class Entry {
+        final float width;
+        final Paint.FontMetricsInt metrics;
+
+        Entry(float width, @Nullable Paint.FontMetricsInt metrics) {
+            this.width = width;
+            this.metrics = metrics;
+        }
+    }
+
+    private static final class Key {
+        String mText;
+        int mStart;
+        int mEnd;
+        TextPaint mPaint;
+        TextDirectionHeuristic mTextDir;
+        boolean mWithMetrics;
+        int mHash;
+
+        void set(String text, int start, int end, TextPaint paint,
+                TextDirectionHeuristic textDir, boolean withMetrics) {
+            mText = text;
+            mStart = start;
+            mEnd = end;
+            mPaint = paint;
+            mTextDir = textDir;
+            mWithMetrics = withMetrics;
+
+            int hash = text.hashCode();
+            hash = 31 * hash + start;
+            hash = 31 * hash + end;
+            hash = 31 * hash + Float.floatToIntBits(paint.getTextSize());
+            hash = 31 * hash + Objects.hashCode(paint.getTypeface());
+            hash = 31 * hash + System.identityHashCode(textDir);
+            hash = 31 * hash + (withMetrics ? 1 : 0);
+            mHash = hash;
+        }
+
+        void clear() {
+            mText = null;
+            mPaint = null;
+            mTextDir = null;
+        }
+
+        @Override
+        public int hashCode() {
+            return mHash;
+        }
+
+        @Override
+        public boolean equals(Object o) {
+            if (this == o) return true;
+            if (!(o instanceof Key)) return false;
+            final Key other = (Key) o;
+            return mHash == other.mHash
+                    && mStart == other.mStart
+                    && mEnd == other.mEnd
+                    && mWithMetrics == other.mWithMetrics
+                    && mTextDir == other.mTextDir
+                    && mText.equals(other.mText)
+                    && (mPaint == other.mPaint || mPaint.hasEqualAttributes(other.mPaint));
+        }
+    }
+
+    private final LinkedHashMap<Key, Entry> mEntries =
+            new LinkedHashMap<Key, Entry>(MAX_ENTRIES, 0.75f, true /* accessOrder */) {
+                @Override
+                protected boolean removeEldestEntry(Map.Entry<Key, Entry> eldest) {
+                    return size() > MAX_ENTRIES;
+                }
+            };
+
+    // Reused for lookups so that a cache hit does not allocate.
+    private final Key mProbe = new Key();
+
+    private TextMeasureCache() {
+    }
+
+    /**
+     * Returns true if a measurement of the given text with the given paint may be cached.
+     */
+    static boolean isCacheable(@NonNull CharSequence text, int start, int end,
+            @NonNull TextPaint paint) {
+        return text instanceof String
+                && end - start <= MAX_TEXT_LENGTH
+                && paint.getClass() == TextPaint.class;
+    }
+
+    /**
+     * Returns the cached measurement for the given range, or null if there is none.
+     * The text must be {@link #isCacheable cacheable}.
+     */
+    @Nullable
+    static Entry get(@NonNull CharSequence text, int start, int end, @NonNull TextPaint paint,
+            @Nullable TextDirectionHeuristic textDir, boolean withMetrics) {
+        final TextMeasureCache cache = sCache.get();
+        final Key probe = cache.mProbe;
+        probe.set((String) text, start, end, paint, textDir, withMetrics);
+        final Entry entry = cache.mEntries.get(probe);
+        probe.clear();
+        return entry;
+    }
+
+    /**
+     * Stores a measurement for the given range. The text must be {@link #isCacheable cacheable}.
+     */
+    static void put(@NonNull CharSequence text, int start, int end, @NonNull TextPaint paint,
+            @Nullable TextDirectionHeuristic textDir, float width,
+            @Nullable Paint.FontMetricsInt metrics) {
+        Paint.FontMetricsInt metricsCopy = null;
+        if (metrics != null) {
+            metricsCopy = new Paint.FontMetricsInt();
+            metricsCopy.top = metrics.top;
+            metricsCopy.ascent = metrics.ascent;
+            metricsCopy.descent = metrics.descent;
+            metricsCopy.bottom = metrics.bottom;
+            metricsCopy.leading = metrics.leading;
+        }
+        // The key keeps its own copy of the paint, since the caller is free to mutate theirs.
+        final TextPaint paintCopy = new TextPaint();
+        paintCopy.set(paint);
+        final Key key = new Key();
+        key.set((String) text, start, end, paintCopy, textDir, metrics != null);
+        sCache.get().mEntries.put(key, new Entry(width, metricsCopy));
+    }
+}
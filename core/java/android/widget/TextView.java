@@ -76,6 +76,7 @@ import android.text.InputFilter;
 import android.text.InputType;
 import android.text.Layout;
 import android.text.ParcelableSpan;
+import android.text.PrecomputedLayout;
 import android.text.Selection;
 import android.text.SpanWatcher;
 import android.text.Spannable;
@@ -165,6 +166,7 @@ import com.android.internal.annotations.VisibleForTesting;
 import com.android.internal.logging.MetricsLogger;
 import com.android.internal.logging.nano.MetricsProto.MetricsEvent;
 import com.android.internal.util.FastMath;
+import com.android.internal.util.Preconditions;
 import com.android.internal.widget.EditableInputConnection;
 
 import libcore.util.EmptyArray;
@@ -682,6 +684,9 @@ public class TextView extends View implements ViewTreeObserver.OnPreDrawListener
     private BoringLayout.Metrics mBoring, mHintBoring;
     private BoringLayout mSavedLayout, mSavedHintLayout;
 
+    // Layout computed ahead of time for the current text, see setPrecomputedLayout().
+    private PrecomputedLayout mPrecomputedLayout;
+
     private TextDirectionHeuristic mTextDir;
 
     private InputFilter[] mFilters = NO_FILTERS;
@@ -5207,6 +5212,25 @@ public class TextView extends View implements ViewTreeObserver.OnPreDrawListener
         setText(text, mBufferType);
     }
 
+    /**
+     * Sets the text to be displayed from a layout that has been measured and broken into lines
+     * ahead of time, typically on a background thread.
+     * <p/>
+     * The precomputed layout is only used if it was built with the same text paint, width and
+     * layout parameters this TextView would use itself, and if the text is displayed as is
+     * (no transformation method, {@link BufferType#NORMAL} buffer, no ellipsizing). Otherwise
+     * the text is laid out as if it had been passed to {@link #setText(CharSequence)}.
+     *
+     * @param precomputed the precomputed text layout
+     *
+     * @see PrecomputedLayout
+     */
+    public void setPrecomputedLayout(@NonNull PrecomputedLayout precomputed) {
+        Preconditions.checkNotNull(precomputed);
+        mPrecomputedLayout = precomputed;
+        setText(precomputed.getText());
+    }
+
     /**
      * Sets the text to be displayed but retains the cursor position. Same as
      * {@link #setText(CharSequence)} except that the cursor position (if any) is retained in the
@@ -5261,6 +5285,10 @@ public class TextView extends View implements ViewTreeObserver.OnPreDrawListener
             text = "";
         }
 
+        if (mPrecomputedLayout != null && mPrecomputedLayout.getText() != text) {
+            mPrecomputedLayout = null;
+        }
+
         // If suggestions are not enabled, remove the suggestion spans from the text
         if (!isSuggestionsEnabled()) {
             text = removeSuggestionSpans(text);
@@ -7950,6 +7978,15 @@ public class TextView extends View implements ViewTreeObserver.OnPreDrawListener
             Layout.Alignment alignment, boolean shouldEllipsize, TruncateAt effectiveEllipsize,
             boolean useSaved) {
         Layout result = null;
+        if (mPrecomputedLayout != null && !shouldEllipsize) {
+            result = mPrecomputedLayout.adoptLayout(mTransformed, mTextPaint, wantWidth,
+                    alignment, mTextDir, mSpacingMult, mSpacingAdd, mIncludePad,
+                    mMaxMode == LINES ? mMaximum : Integer.MAX_VALUE, mBreakStrategy,
+                    mHyphenationFrequency, mJustificationMode);
+            if (result != null) {
+                return result;
+            }
+        }
         if (mText instanceof Spannable) {
             result = new DynamicLayout(mText, mTransformed, mTextPaint, wantWidth,
                     alignment, mTextDir, mSpacingMult, mSpacingAdd, mIncludePad,
@@ -8121,6 +8158,11 @@ public class TextView extends View implements ViewTreeObserver.OnPreDrawListener
                 des = desired(mLayout);
             }
 
+            if (des < 0 && mPrecomputedLayout != null
+                    && mPrecomputedLayout.isDesiredWidthValid(mTransformed, mTextPaint, mTextDir)) {
+                des = (int) Math.ceil(mPrecomputedLayout.getDesiredWidth());
+            }
+
             if (des < 0) {
                 boring = BoringLayout.isBoring(mTransformed, mTextPaint, mTextDir, mBoring);
                 if (boring != null) {
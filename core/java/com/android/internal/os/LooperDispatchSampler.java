@@ -0,0 +1,159 @@
+/*
+ * Copyright (C) 2017 The Android Open Source Project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.android.internal.os;
+
+import android.os.Looper;
+import android.os.Message;
+import android.os.SystemClock;
+import android.util.TimeUtils;
+
+import java.io.PrintWriter;
+
+/**
+ * A {@link Looper.Observer} that keeps the most recent sampled message dispatches of a looper in
+ * a fixed size ring buffer, along with the message currently being dispatched.
+ *
+ * <p>Every {@code sampleInterval}th dispatch is recorded, and so is every dispatch that took at
+ * least {@code slowThresholdMs}. Recording does not allocate, so a sampler can be kept attached
+ * in production builds.</p>
+ */
+public final class LooperDispatchSampler implements Looper.Observer {
+    private final int mSampleInterval;
+    private final long mSlowThresholdMs;
+
+    private final Object mLock = new Object();
+
+    // Ring buffer of samples, mNext is the slot the next sample is written to.
+    private final long[] mStartUptimes;
+    private final long[] mWaitMs;
+    private final long[] mDispatchMs;
+    private final Class<?>[] mClasses;
+    private final int[] mWhats;
+    private int mNext;
+    private int mSize;
+
+    private int mSkipped;
+    private long mDispatchCount;
+    private long mSlowDispatchCount;
+
+    // The message being dispatched, if any.
+    private Class<?> mCurrentClass;
+    private int mCurrentWhat;
+    private long mCurrentStartUptime;
+
+    /**
+     * @param capacity The number of samples to keep.
+     * @param sampleInterval Record one in this many dispatches.
+     * @param slowThresholdMs Always record dispatches taking at least this long.
+     */
+    public LooperDispatchSampler(int capacity, int sampleInterval, long slowThresholdMs) {
+        if (capacity <= 0 || sampleInterval <= 0) {
+            throw new IllegalArgumentException("capacity and sampleInterval must be positive");
+        }
+        mSampleInterval = sampleInterval;
+        mSlowThresholdMs = slowThresholdMs;
+        mStartUptimes = new long[capacity];
+        mWaitMs = new long[capacity];
+        mDispatchMs = new long[capacity];
+        mClasses = new Class<?>[capacity];
+        mWhats = new int[capacity];
+    }
+
+    private static Class<?> classOf(Message msg) {
+        final Runnable callback = msg.getCallback();
+        return callback != null ? callback.getClass() : msg.getTarget().getClass();
+    }
+
+    @Override
+    public void messageDispatchStarting(Message msg, long startUptimeMs) {
+        synchronized (mLock) {
+            mCurrentClass = classOf(msg);
+            mCurrentWhat = msg.what;
+            mCurrentStartUptime = startUptimeMs;
+        }
+    }
+
+    @Override
+    public void messageDispatched(Message msg, long startUptimeMs, long endUptimeMs) {
+        final long dispatchMs = endUptimeMs - startUptimeMs;
+        synchronized (mLock) {
+            mCurrentClass = null;
+            mDispatchCount++;
+            final boolean slow = dispatchMs >= mSlowThresholdMs;
+            if (slow) {
+                mSlowDispatchCount++;
+            }
+            if (!slow && ++mSkipped < mSampleInterval) {
+                return;
+            }
+            mSkipped = 0;
+
+            final int i = mNext;
+            // Messages posted at the front of the queue have no delivery time.
+            final long when = msg.getWhen();
+            mStartUptimes[i] = startUptimeMs;
+            mWaitMs[i] = when == 0 ? 0 : Math.max(0, startUptimeMs - when);
+            mDispatchMs[i] = dispatchMs;
+            mClasses[i] = classOf(msg);
+            mWhats[i] = msg.what;
+            mNext = (i + 1) % mClasses.length;
+            if (mSize < mClasses.length) {
+                mSize++;
+            }
+        }
+    }
+
+    /**
+     * Returns a description of the message currently being dispatched and for how long, or
+     * null if the looper is not dispatching a message.
+     */
+    public String describeCurrentDispatch() {
+        synchronized (mLock) {
+            if (mCurrentClass == null) {
+                return null;
+            }
+            return mCurrentClass.getName() + " what=" + mCurrentWhat + " for "
+                    + (SystemClock.uptimeMillis() - mCurrentStartUptime) + "ms";
+        }
+    }
+
+    public void dump(PrintWriter pw, String prefix) {
+        synchronized (mLock) {
+            final long now = SystemClock.uptimeMillis();
+            pw.print(prefix); pw.print("dispatches="); pw.print(mDispatchCount);
+            pw.print(" slow(>="); pw.print(mSlowThresholdMs); pw.print("ms)=");
+            pw.print(mSlowDispatchCount);
+            pw.print(" sampleInterval="); pw.println(mSampleInterval);
+            if (mCurrentClass != null) {
+                pw.print(prefix); pw.print("Dispatching: "); pw.print(mCurrentClass.getName());
+                pw.print(" what="); pw.print(mCurrentWhat); pw.print(" started ");
+                TimeUtils.formatDuration(mCurrentStartUptime, now, pw);
+                pw.println();
+            }
+            // Most recent first.
+            for (int n = 0; n < mSize; n++) {
+                final int i = (mNext - 1 - n + mClasses.length) % mClasses.length;
+                pw.print(prefix); pw.print("  ");
+                TimeUtils.formatDuration(mStartUptimes[i], now, pw);
+                pw.print(" "); pw.print(mClasses[i].getName());
+                pw.print(" what="); pw.print(mWhats[i]);
+                pw.print(" wait="); pw.print(mWaitMs[i]);
+                pw.print("ms dispatch="); pw.print(mDispatchMs[i]); pw.println("ms");
+            }
+        }
+    }
+}
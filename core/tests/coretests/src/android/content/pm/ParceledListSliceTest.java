@@ -94,11 +94,17 @@ public class ParceledListSliceTest extends TestCase {
     }
 
     private void sendParcelStringList(List<String> list) {
+        sendParcelStringList(list, false);
+    }
+
+    private void sendParcelStringList(List<String> list, boolean poolStrings) {
         StringParceledListSlice slice;
         Parcel parcel = Parcel.obtain();
 
         try {
-            parcel.writeParcelable(new StringParceledListSlice(list), 0);
+            final StringParceledListSlice written = new StringParceledListSlice(list);
+            written.setPoolStrings(poolStrings);
+            parcel.writeParcelable(written, 0);
             parcel.setDataPosition(0);
             slice = parcel.readParcelable(getClass().getClassLoader());
         } finally {
@@ -130,6 +136,75 @@ public class ParceledListSliceTest extends TestCase {
     }
 
 
+    public void testPooledStringList() throws Exception {
+        final int objectCount = 400;
+        List<String> list = new ArrayList<String>();
+        for (long i = 0; i < objectCount; i++) {
+            list.add(i % 3 == 0 ? null : Long.toString(i % 7));
+        }
+
+        sendParcelStringList(list, true);
+    }
+
+    public void testLargePooledStringList() throws Exception {
+        final int thresholdBytes = 256 * 1024;
+        final int objectCount = 2 * thresholdBytes / Long.toString(Long.MAX_VALUE).length();
+        final List<String> list = new ArrayList<String>();
+        for (long i = 0; i < objectCount; i++) {
+            // Mostly distinct strings, so that the list still needs several transactions.
+            list.add(Long.toString(Long.MAX_VALUE - i / 2));
+        }
+
+        sendParcelStringList(list, true);
+    }
+
+    public void testPooledStringsAreSmaller() throws Exception {
+        final List<String> list = Collections.nCopies(1000, "com.example.some.package.name");
+        final int plainSize;
+        final int pooledSize;
+
+        Parcel parcel = Parcel.obtain();
+        try {
+            parcel.writeParcelable(new StringParceledListSlice(list), 0);
+            plainSize = parcel.dataSize();
+        } finally {
+            parcel.recycle();
+        }
+
+        parcel = Parcel.obtain();
+        try {
+            final StringParceledListSlice slice = new StringParceledListSlice(list);
+            slice.setPoolStrings(true);
+            parcel.writeParcelable(slice, 0);
+            pooledSize = parcel.dataSize();
+            assertFalse(parcel.hasReadWriteHelper());
+        } finally {
+            parcel.recycle();
+        }
+
+        assertTrue("pooled=" + pooledSize + " plain=" + plainSize, pooledSize < plainSize / 2);
+    }
+
+    public void testPooledStringsKeepExistingReadHelper() throws Exception {
+        final List<String> list = Collections.nCopies(10, "com.example.some.package.name");
+        final Parcel.ReadWriteHelper helper = new Parcel.ReadWriteHelper();
+        Parcel parcel = Parcel.obtain();
+        try {
+            final StringParceledListSlice written = new StringParceledListSlice(list);
+            written.setPoolStrings(true);
+            parcel.writeParcelable(written, 0);
+            parcel.setDataPosition(0);
+            parcel.setReadWriteHelper(helper);
+            final StringParceledListSlice read =
+                    parcel.readParcelable(getClass().getClassLoader());
+
+            assertEquals(list, read.getList());
+            assertSame(helper, parcel.getReadWriteHelper());
+        } finally {
+            parcel.recycle();
+        }
+    }
+
     /**
      * Test that only homogeneous elements may be unparceled.
      */
@@ -170,6 +245,9 @@ public class ParceledListSliceTest extends TestCase {
         // to simulate an attack on ParceledListSlice.
         dest.writeString(BaseObject.class.getName());
 
+        // 0 means strings are not pooled.
+        dest.writeInt(0);
+
         for (int i = 0; i < listCount; i++) {
             // 1 means the item is present.
             dest.writeInt(1);
@@ -25,6 +25,7 @@ import android.support.test.InstrumentationRegistry;
 import android.support.test.filters.SmallTest;
 import android.support.test.runner.AndroidJUnit4;
 import android.util.Log;
+import android.util.StringBuilderPrinter;
 
 import org.junit.After;
 import org.junit.Before;
@@ -88,4 +89,21 @@ public class SQLiteConnectionPoolTest {
         pool.close();
         thread.quit();
     }
+
+    @Test
+    public void testStatementStats() {
+        SQLiteConnectionPool pool = SQLiteConnectionPool.open(mTestConf);
+        SQLiteConnection c = pool.acquireConnection("SELECT 1", 0, null);
+        assertEquals(1, c.executeForLong("SELECT 1", null, null));
+        assertEquals(1, c.executeForLong("SELECT 1", null, null));
+        pool.releaseConnection(c);
+
+        StringBuilder sb = new StringBuilder();
+        pool.dump(new StringBuilderPrinter(sb), false);
+        pool.close();
+        String dump = sb.toString();
+        assertTrue(dump, dump.contains("executions=2,"));
+        assertTrue(dump, dump.contains("compiles=1,"));
+        assertTrue(dump, dump.contains("cacheHitRatio=50%, sql=\"SELECT 1\""));
+    }
 }
@@ -0,0 +1,78 @@
+/*
+ * Copyright (C) 2017 The Android Open Source Project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package android.database.sqlite;
+
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+import android.support.test.filters.SmallTest;
+import android.support.test.runner.AndroidJUnit4;
+import android.util.StringBuilderPrinter;
+
+import org.junit.Test;
+import org.junit.runner.RunWith;
+
+/**
+ * Tests for {@link SQLiteStatementStats}
+ *
+ * <p>Run with:  bit FrameworksCoreTests:android.database.sqlite.SQLiteStatementStatsTest
+ */
+@RunWith(AndroidJUnit4.class)
+@SmallTest
+public class SQLiteStatementStatsTest {
+
+    private static String dump(SQLiteStatementStats stats) {
+        StringBuilder sb = new StringBuilder();
+        stats.dump(new StringBuilderPrinter(sb), true);
+        return sb.toString();
+    }
+
+    @Test
+    public void testEvictsLeastRecentlyUsed() {
+        SQLiteStatementStats stats = new SQLiteStatementStats(2);
+        stats.recordExecution("SELECT 1", 1000);
+        stats.recordExecution("SELECT 2", 1000);
+        stats.recordExecution("SELECT 1", 1000);
+        // A statement first seen after the limit was reached is still recorded.
+        stats.recordExecution("SELECT 3", 1000);
+
+        String dump = dump(stats);
+        assertTrue(dump, dump.contains("sql=\"SELECT 1\""));
+        assertFalse(dump, dump.contains("sql=\"SELECT 2\""));
+        assertTrue(dump, dump.contains("sql=\"SELECT 3\""));
+        assertTrue(dump, dump.contains("1 statements evicted"));
+    }
+
+    @Test
+    public void testMergeInto() {
+        SQLiteStatementStats first = new SQLiteStatementStats(10);
+        first.recordCompile("SELECT 1", 1000);
+        first.recordExecution("SELECT 1", 2000);
+        SQLiteStatementStats second = new SQLiteStatementStats(10);
+        second.recordCacheHit("SELECT 1");
+        second.recordExecution("SELECT 1", 4000);
+
+        SQLiteStatementStats merged = new SQLiteStatementStats(Integer.MAX_VALUE);
+        first.mergeInto(merged);
+        second.mergeInto(merged);
+
+        String dump = dump(merged);
+        assertTrue(dump, dump.contains("executions=2, avgExecute=3, maxExecute=4,"));
+        assertTrue(dump, dump.contains("compiles=1,"));
+        assertTrue(dump, dump.contains("cacheHitRatio=50%, sql=\"SELECT 1\""));
+    }
+}
@@ -0,0 +1,153 @@
+/*
+ * Copyright (C) 2017 The Android Open Source Project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package android.os;
+
+import android.test.suitebuilder.annotation.MediumTest;
+
+import junit.framework.TestCase;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+
+/**
+ * Checks the delivery order of messages around the paths that maintain the tail of the
+ * {@link MessageQueue}: removals, barriers and draining the queue.
+ */
+public class MessageQueueOrderTest extends TestCase {
+    // Messages are posted this far in the future so that all of them are queued before the
+    // first one is delivered.
+    private static final long DELAY_MS = 200;
+    private static final long TIMEOUT_MS = 2000;
+
+    private final ArrayList<Integer> mDelivered = new ArrayList<>();
+    private HandlerThread mThread;
+    private Handler mHandler;
+
+    @Override
+    protected void setUp() throws Exception {
+        super.setUp();
+        mThread = new HandlerThread("MessageQueueOrderTest");
+        mThread.start();
+        mHandler = new Handler(mThread.getLooper()) {
+            @Override
+            public void handleMessage(Message msg) {
+                synchronized (mDelivered) {
+                    mDelivered.add(msg.what);
+                    mDelivered.notifyAll();
+                }
+            }
+        };
+    }
+
+    @Override
+    protected void tearDown() throws Exception {
+        mThread.quit();
+        mThread.join();
+        super.tearDown();
+    }
+
+    @MediumTest
+    public void testOrderAfterRemovingLast() throws Exception {
+        final long base = SystemClock.uptimeMillis() + DELAY_MS;
+        send(0, base);
+        send(1, base + 1);
+        send(10, base + 3);
+        mHandler.removeMessages(10);
+        send(3, base + 2);
+        send(2, base + 1);
+
+        assertDelivered(0, 1, 2, 3);
+    }
+
+    @MediumTest
+    public void testOrderAfterRemovingAll() throws Exception {
+        final long base = SystemClock.uptimeMillis() + DELAY_MS;
+        send(10, base + 1);
+        send(11, base + 2);
+        mHandler.removeCallbacksAndMessages(null);
+        send(1, base + 2);
+        send(0, base + 1);
+        send(2, base + 3);
+
+        assertDelivered(0, 1, 2);
+    }
+
+    @MediumTest
+    public void testBarrierAtTail() throws Exception {
+        final MessageQueue queue = mThread.getLooper().getQueue();
+        // The queue is empty, so the barrier is also the last message.
+        final int token = queue.postSyncBarrier();
+        final long base = SystemClock.uptimeMillis() + DELAY_MS;
+        send(1, base);
+        final Message async = mHandler.obtainMessage(0);
+        async.setAsynchronous(true);
+        mHandler.sendMessageAtTime(async, base + 1);
+
+        // Only the asynchronous message gets past the barrier.
+        assertDelivered(0);
+        assertTrue(mHandler.hasMessages(1));
+
+        send(2, base + 2);
+        queue.removeSyncBarrier(token);
+
+        assertDelivered(0, 1, 2);
+    }
+
+    @MediumTest
+    public void testRemovingBarrierAtTail() throws Exception {
+        final MessageQueue queue = mThread.getLooper().getQueue();
+        // The queue is empty, so the barrier is also the last message.
+        queue.removeSyncBarrier(queue.postSyncBarrier());
+        final long base = SystemClock.uptimeMillis() + DELAY_MS;
+        send(2, base + 2);
+        send(0, base);
+        send(1, base + 1);
+
+        assertDelivered(0, 1, 2);
+    }
+
+    @MediumTest
+    public void testEnqueueAfterDrain() throws Exception {
+        long base = SystemClock.uptimeMillis() + DELAY_MS;
+        send(0, base);
+        send(1, base + 1);
+        assertDelivered(0, 1);
+
+        base = SystemClock.uptimeMillis() + DELAY_MS;
+        send(3, base + 1);
+        send(2, base);
+        send(4, base + 1);
+
+        assertDelivered(0, 1, 2, 3, 4);
+    }
+
+    private void send(int what, long uptimeMillis) {
+        assertTrue(mHandler.sendMessageAtTime(mHandler.obtainMessage(what), uptimeMillis));
+    }
+
+    private void assertDelivered(Integer... expected) throws InterruptedException {
+        final long deadline = SystemClock.uptimeMillis() + TIMEOUT_MS;
+        synchronized (mDelivered) {
+            long now;
+            while (mDelivered.size() < expected.length
+                    && (now = SystemClock.uptimeMillis()) < deadline) {
+                mDelivered.wait(deadline - now);
+            }
+            assertEquals(Arrays.asList(expected), mDelivered);
+        }
+    }
+}
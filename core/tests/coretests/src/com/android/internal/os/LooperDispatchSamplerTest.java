@@ -0,0 +1,122 @@
+/*
+ * Copyright (C) 2017 The Android Open Source Project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.android.internal.os;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+
+import android.os.Handler;
+import android.os.Looper;
+import android.os.Message;
+import android.support.test.filters.SmallTest;
+import android.support.test.runner.AndroidJUnit4;
+
+import org.junit.Before;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+
+import java.io.PrintWriter;
+import java.io.StringWriter;
+
+/**
+ * Test class for {@link LooperDispatchSampler}.
+ *
+ * To run the tests, use
+ *
+ * runtest -c com.android.internal.os.LooperDispatchSamplerTest frameworks-core
+ */
+@SmallTest
+@RunWith(AndroidJUnit4.class)
+public class LooperDispatchSamplerTest {
+    private static final class TestHandler extends Handler {
+        TestHandler() {
+            super(Looper.getMainLooper());
+        }
+    }
+
+    private LooperDispatchSampler mSampler;
+    private Handler mHandler;
+
+    @Before
+    public void setUp() {
+        mSampler = new LooperDispatchSampler(2 /* capacity */, 3 /* sampleInterval */,
+                100 /* slowThresholdMs */);
+        mHandler = new TestHandler();
+    }
+
+    private void dispatch(int what, long start, long end) {
+        final Message msg = mHandler.obtainMessage(what);
+        mSampler.messageDispatchStarting(msg, start);
+        mSampler.messageDispatched(msg, start, end);
+    }
+
+    private String dump() {
+        final StringWriter sw = new StringWriter();
+        final PrintWriter pw = new PrintWriter(sw);
+        mSampler.dump(pw, "");
+        pw.flush();
+        return sw.toString();
+    }
+
+    @Test
+    public void testDescribeCurrentDispatch() {
+        assertNull(mSampler.describeCurrentDispatch());
+
+        final Message msg = mHandler.obtainMessage(42);
+        mSampler.messageDispatchStarting(msg, 0);
+        final String current = mSampler.describeCurrentDispatch();
+        assertTrue(current, current.contains(TestHandler.class.getName()));
+        assertTrue(current, current.contains("what=42"));
+
+        mSampler.messageDispatched(msg, 0, 1);
+        assertNull(mSampler.describeCurrentDispatch());
+    }
+
+    @Test
+    public void testSamplesEveryNthDispatch() {
+        dispatch(1, 0, 1);
+        dispatch(2, 1, 2);
+        assertFalse(dump().contains("what="));
+
+        dispatch(3, 2, 3);
+        final String dump = dump();
+        assertTrue(dump, dump.contains("what=3"));
+        assertFalse(dump, dump.contains("what=1"));
+        assertFalse(dump, dump.contains("what=2"));
+    }
+
+    @Test
+    public void testAlwaysRecordsSlowDispatches() {
+        dispatch(7, 0, 150);
+        final String dump = dump();
+        assertTrue(dump, dump.contains("what=7"));
+        assertTrue(dump, dump.contains("dispatches=1 slow(>=100ms)=1"));
+    }
+
+    @Test
+    public void testKeepsMostRecentSamples() {
+        dispatch(1, 0, 200);
+        dispatch(2, 200, 400);
+        dispatch(3, 400, 600);
+        final String dump = dump();
+        assertFalse(dump, dump.contains("what=1"));
+        assertTrue(dump, dump.indexOf("what=3") < dump.indexOf("what=2"));
+        assertEquals(-1, dump.indexOf("what=4"));
+    }
+}
@@ -5131,21 +5131,25 @@ public class ConnectivityService extends IConnectivityManager.Stub
             }
         }
         if (reapUnvalidatedNetworks == ReapUnvalidatedNetworks.REAP) {
-            for (NetworkAgentInfo nai : mNetworkAgentInfos.values()) {
-                if (unneeded(nai, UnneededFor.TEARDOWN)) {
-                    if (nai.getLingerExpiry() > 0) {
-                        // This network has active linger timers and no requests, but is not
-                        // lingering. Linger it.
-                        //
-                        // One way (the only way?) this can happen if this network is unvalidated
-                        // and became unneeded due to another network improving its score to the
-                        // point where this network will no longer be able to satisfy any requests
-                        // even if it validates.
-                        updateLingerState(nai, now);
-                    } else {
-                        if (DBG) log("Reaping " + nai.name());
-                        teardownUnneededNetwork(nai);
-                    }
+            reapUnneededNetworks(now);
+        }
+    }
+
+    private void reapUnneededNetworks(long now) {
+        for (NetworkAgentInfo nai : mNetworkAgentInfos.values()) {
+            if (unneeded(nai, UnneededFor.TEARDOWN)) {
+                if (nai.getLingerExpiry() > 0) {
+                    // This network has active linger timers and no requests, but is not
+                    // lingering. Linger it.
+                    //
+                    // One way (the only way?) this can happen if this network is unvalidated
+                    // and became unneeded due to another network improving its score to the
+                    // point where this network will no longer be able to satisfy any requests
+                    // even if it validates.
+                    updateLingerState(nai, now);
+                } else {
+                    if (DBG) log("Reaping " + nai.name());
+                    teardownUnneededNetwork(nai);
                 }
             }
         }
@@ -5175,6 +5179,13 @@ public class ConnectivityService extends IConnectivityManager.Stub
         final long now = SystemClock.elapsedRealtime();
         if (changed != null && oldScore < changed.getCurrentScore()) {
             rematchNetworkAndRequests(changed, ReapUnvalidatedNetworks.REAP, now);
+        } else if (changed != null && oldScore > changed.getCurrentScore()
+                && changed.everConnected && changed.numRequestNetworkRequests() == 0) {
+            // Optimization: "changed" lost score but satisfies no requests. Its capabilities did
+            // not change, so it can't start satisfying a request it lost to another network
+            // at a higher score, and no other network's standing changed. The only possible
+            // effect is that "changed" or another network is now unneeded.
+            reapUnneededNetworks(now);
         } else {
             final NetworkAgentInfo[] nais = mNetworkAgentInfos.values().toArray(
                     new NetworkAgentInfo[mNetworkAgentInfos.size()]);
@@ -5340,7 +5351,15 @@ public class ConnectivityService extends IConnectivityManager.Stub
         }
 
         final int oldScore = nai.getCurrentScore();
+        final int oldScoreAsValidated = nai.getCurrentScoreAsValidated();
         nai.setCurrentScore(score);
+        if (nai.getCurrentScore() == oldScore
+                && nai.getCurrentScoreAsValidated() == oldScoreAsValidated) {
+            // Transports such as Wi-Fi report their score on every signal change. Matching and
+            // reaping only look at these two scores, and factories already have the first one.
+            if (VDBG) log("updateNetworkScore for " + nai.name() + ": score unchanged");
+            return;
+        }
 
         rematchAllNetworksAndRequests(nai, oldScore);
 
@@ -37,6 +37,7 @@ public final class IoThread extends ServiceThread {
             sInstance = new IoThread();
             sInstance.start();
             sInstance.getLooper().setTraceTag(Trace.TRACE_TAG_ACTIVITY_MANAGER);
+            sInstance.getLooper().setDispatchLatencyStatsEnabled(true);
             sHandler = new Handler(sInstance.getLooper());
         }
     }
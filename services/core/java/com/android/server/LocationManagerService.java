@@ -97,6 +97,7 @@ import android.text.TextUtils;
 import android.util.EventLog;
 import android.util.Log;
 import android.util.Slog;
+import android.util.SparseIntArray;
 
 import java.io.FileDescriptor;
 import java.io.PrintWriter;
@@ -234,6 +235,11 @@ public class LocationManagerService extends ILocationManager.Stub {
 
     private final ArraySet<String> mBackgroundThrottlePackageWhitelist = new ArraySet<>();
 
+    // Location permission level of each uid checked during the current fix dispatch or
+    // requirements update, see getAllowedResolutionLevelLocked(). Cleared at the start of each,
+    // so a revoked permission is seen by the next one.
+    private final SparseIntArray mAllowedResolutionLevelCache = new SparseIntArray();
+
     private final ArrayMap<IGnssMeasurementsListener, Identity> mGnssMeasurementsListeners =
             new ArrayMap<>();
 
@@ -1545,6 +1551,53 @@ public class LocationManagerService extends ILocationManager.Stub {
         return getAllowedResolutionLevel(pid, uid) >= allowedResolutionLevel;
     }
 
+    /**
+     * Same as {@link #reportLocationAccessNoThrow}, but takes the permission level from
+     * {@link #getAllowedResolutionLevelLocked}. The app op is still noted on every call.
+     */
+    private boolean reportLocationAccessNoThrowLocked(
+            int pid, int uid, String packageName, int allowedResolutionLevel) {
+        int op = resolutionLevelToOp(allowedResolutionLevel);
+        if (op >= 0) {
+            if (mAppOps.noteOpNoThrow(op, uid, packageName) != AppOpsManager.MODE_ALLOWED) {
+                return false;
+            }
+        }
+
+        return getAllowedResolutionLevelLocked(pid, uid) >= allowedResolutionLevel;
+    }
+
+    /**
+     * Same as {@link #checkLocationAccess}, but takes the permission level from
+     * {@link #getAllowedResolutionLevelLocked}.
+     */
+    private boolean checkLocationAccessLocked(
+            int pid, int uid, String packageName, int allowedResolutionLevel) {
+        int op = resolutionLevelToOp(allowedResolutionLevel);
+        if (op >= 0) {
+            if (mAppOps.checkOp(op, uid, packageName) != AppOpsManager.MODE_ALLOWED) {
+                return false;
+            }
+        }
+
+        return getAllowedResolutionLevelLocked(pid, uid) >= allowedResolutionLevel;
+    }
+
+    /**
+     * Returns {@link #getAllowedResolutionLevel}, cached per uid for the duration of one fix
+     * dispatch or requirements update. Location permissions are granted per uid, so the pid of
+     * the first caller is as good as any other. Without the cache, a uid with several receivers
+     * would be checked up to twice per receiver in a single pass.
+     */
+    private int getAllowedResolutionLevelLocked(int pid, int uid) {
+        int level = mAllowedResolutionLevelCache.get(uid, -1);
+        if (level < 0) {
+            level = getAllowedResolutionLevel(pid, uid);
+            mAllowedResolutionLevelCache.put(uid, level);
+        }
+        return level;
+    }
+
     /**
      * Returns all providers by name, including passive, but excluding
      * fused, also including ones that are not permitted to
@@ -1733,6 +1786,7 @@ public class LocationManagerService extends ILocationManager.Stub {
         ArrayList<UpdateRecord> records = mRecordsByProvider.get(provider);
         WorkSource worksource = new WorkSource();
         ProviderRequest providerRequest = new ProviderRequest();
+        mAllowedResolutionLevelCache.clear();
 
         ContentResolver resolver = mContext.getContentResolver();
         long backgroundThrottleInterval = Settings.Global.getLong(
@@ -1743,7 +1797,7 @@ public class LocationManagerService extends ILocationManager.Stub {
         if (records != null) {
             for (UpdateRecord record : records) {
                 if (isCurrentProfile(UserHandle.getUserId(record.mReceiver.mIdentity.mUid))) {
-                    if (checkLocationAccess(
+                    if (checkLocationAccessLocked(
                             record.mReceiver.mIdentity.mPid,
                             record.mReceiver.mIdentity.mUid,
                             record.mReceiver.mIdentity.mPackageName,
@@ -2586,6 +2640,7 @@ public class LocationManagerService extends ILocationManager.Stub {
 
         long now = SystemClock.elapsedRealtime();
         String provider = (passive ? LocationManager.PASSIVE_PROVIDER : location.getProvider());
+        mAllowedResolutionLevelCache.clear();
 
         // Skip if the provider is unknown.
         LocationProviderInterface p = mProvidersByName.get(provider);
@@ -2650,6 +2705,30 @@ public class LocationManagerService extends ILocationManager.Stub {
             Receiver receiver = r.mReceiver;
             boolean receiverDead = false;
 
+            Location notifyLocation;
+            if (receiver.mAllowedResolutionLevel < RESOLUTION_LEVEL_FINE) {
+                notifyLocation = coarseLocation;  // use coarse location
+            } else {
+                notifyLocation = lastLocation;  // use fine location
+            }
+            final boolean locationDue = notifyLocation != null
+                    && shouldBroadcastSafe(notifyLocation, r.mLastFixBroadcast, r, now);
+            final long prevStatusUpdateTime = r.mLastStatusBroadcast;
+            final boolean statusDue = (newStatusUpdateTime > prevStatusUpdateTime)
+                    && (prevStatusUpdateTime != 0 || status != LocationProvider.AVAILABLE);
+            if (!locationDue && !statusDue) {
+                // Nothing to deliver to this record, which is the common case for throttled
+                // background requests. Skip the user, blacklist and app op checks, which would
+                // also note a location access the app never sees.
+                if (r.mRealRequest.getNumUpdates() <= 0 || r.mRealRequest.getExpireAt() < now) {
+                    if (deadUpdateRecords == null) {
+                        deadUpdateRecords = new ArrayList<>();
+                    }
+                    deadUpdateRecords.add(r);
+                }
+                continue;
+            }
+
             int receiverUserId = UserHandle.getUserId(receiver.mIdentity.mUid);
             if (!isCurrentProfile(receiverUserId)
                     && !isUidALocationProvider(receiver.mIdentity.mUid)) {
@@ -2667,7 +2746,7 @@ public class LocationManagerService extends ILocationManager.Stub {
                 continue;
             }
 
-            if (!reportLocationAccessNoThrow(
+            if (!reportLocationAccessNoThrowLocked(
                     receiver.mIdentity.mPid,
                     receiver.mIdentity.mUid,
                     receiver.mIdentity.mPackageName,
@@ -2677,33 +2756,23 @@ public class LocationManagerService extends ILocationManager.Stub {
                 continue;
             }
 
-            Location notifyLocation;
-            if (receiver.mAllowedResolutionLevel < RESOLUTION_LEVEL_FINE) {
-                notifyLocation = coarseLocation;  // use coarse location
-            } else {
-                notifyLocation = lastLocation;  // use fine location
-            }
-            if (notifyLocation != null) {
+            if (locationDue) {
                 Location lastLoc = r.mLastFixBroadcast;
-                if ((lastLoc == null) || shouldBroadcastSafe(notifyLocation, lastLoc, r, now)) {
-                    if (lastLoc == null) {
-                        lastLoc = new Location(notifyLocation);
-                        r.mLastFixBroadcast = lastLoc;
-                    } else {
-                        lastLoc.set(notifyLocation);
-                    }
-                    if (!receiver.callLocationChangedLocked(notifyLocation)) {
-                        Slog.w(TAG, "RemoteException calling onLocationChanged on " + receiver);
-                        receiverDead = true;
-                    }
-                    r.mRealRequest.decrementNumUpdates();
+                if (lastLoc == null) {
+                    lastLoc = new Location(notifyLocation);
+                    r.mLastFixBroadcast = lastLoc;
+                } else {
+                    lastLoc.set(notifyLocation);
                 }
+                if (!receiver.callLocationChangedLocked(notifyLocation)) {
+                    Slog.w(TAG, "RemoteException calling onLocationChanged on " + receiver);
+                    receiverDead = true;
+                }
+                r.mRealRequest.decrementNumUpdates();
+                mRequestStatistics.locationDelivered(receiver.mIdentity.mPackageName, provider);
             }
 
-            long prevStatusUpdateTime = r.mLastStatusBroadcast;
-            if ((newStatusUpdateTime > prevStatusUpdateTime) &&
-                    (prevStatusUpdateTime != 0 || status != LocationProvider.AVAILABLE)) {
-
+            if (statusDue) {
                 r.mLastStatusBroadcast = newStatusUpdateTime;
                 if (!receiver.callStatusChangedLocked(provider, status, extras)) {
                     receiverDead = true;
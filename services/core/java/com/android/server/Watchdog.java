@@ -23,6 +23,7 @@ import android.os.RemoteException;
 import android.system.ErrnoException;
 import android.system.OsConstants;
 import android.system.StructRlimit;
+import com.android.internal.os.LooperDispatchSampler;
 import com.android.internal.os.ZygoteConnectionConstants;
 import com.android.server.am.ActivityManagerService;
 
@@ -43,12 +44,14 @@ import android.os.SystemClock;
 import android.os.SystemProperties;
 import android.util.EventLog;
 import android.util.Log;
+import android.util.PrintWriterPrinter;
 import android.util.Slog;
 
 import java.io.File;
 import java.io.FileWriter;
 import java.io.FileReader;
 import java.io.IOException;
+import java.io.PrintWriter;
 import java.io.BufferedReader;
 import java.util.ArrayList;
 import java.util.Arrays;
@@ -76,6 +79,11 @@ public class Watchdog extends Thread {
     static final long DEFAULT_TIMEOUT = DB ? 10*1000 : 60*1000;
     static final long CHECK_INTERVAL = DEFAULT_TIMEOUT / 2;
 
+    // Sampling of message dispatches on the checked threads, see LooperDispatchSampler.
+    static final int DISPATCH_SAMPLE_CAPACITY = 64;
+    static final int DISPATCH_SAMPLE_INTERVAL = 100;
+    static final long SLOW_DISPATCH_THRESHOLD_MS = 100;
+
     // These are temporally ordered: larger values as lateness increases
     static final int COMPLETED = 0;
     static final int WAITING = 1;
@@ -128,6 +136,7 @@ public class Watchdog extends Thread {
         private final String mName;
         private final long mWaitMax;
         private final ArrayList<Monitor> mMonitors = new ArrayList<Monitor>();
+        private final LooperDispatchSampler mSampler;
         private boolean mCompleted;
         private Monitor mCurrentMonitor;
         private long mStartTime;
@@ -137,6 +146,7 @@ public class Watchdog extends Thread {
             mName = name;
             mWaitMax = waitMaxMillis;
             mCompleted = true;
+            mSampler = getOrCreateSampler(handler.getLooper());
         }
 
         public void addMonitor(Monitor monitor) {
@@ -194,7 +204,10 @@ public class Watchdog extends Thread {
 
         public String describeBlockedStateLocked() {
             if (mCurrentMonitor == null) {
-                return "Blocked in handler on " + mName + " (" + getThread().getName() + ")";
+                final String dispatch = mSampler != null
+                        ? mSampler.describeCurrentDispatch() : null;
+                return "Blocked in handler on " + mName + " (" + getThread().getName() + ")"
+                        + (dispatch != null ? " dispatching " + dispatch : "");
             } else {
                 return "Blocked in monitor " + mCurrentMonitor.getClass().getName()
                         + " on " + mName + " (" + getThread().getName() + ")";
@@ -244,6 +257,43 @@ public class Watchdog extends Thread {
         void monitor();
     }
 
+    /**
+     * Returns the dispatch sampler of the given looper, attaching a new one if it has no
+     * observer yet. Returns null if the looper is observed by something else.
+     */
+    private static LooperDispatchSampler getOrCreateSampler(Looper looper) {
+        final Looper.Observer observer = looper.getObserver();
+        if (observer == null) {
+            final LooperDispatchSampler sampler = new LooperDispatchSampler(
+                    DISPATCH_SAMPLE_CAPACITY, DISPATCH_SAMPLE_INTERVAL, SLOW_DISPATCH_THRESHOLD_MS);
+            looper.setObserver(sampler);
+            return sampler;
+        }
+        return observer instanceof LooperDispatchSampler
+                ? (LooperDispatchSampler) observer : null;
+    }
+
+    /**
+     * Dumps the queues and recent message dispatches of the threads checked by the watchdog.
+     */
+    public void dumpLoopers(PrintWriter pw) {
+        final ArrayList<HandlerChecker> checkers;
+        synchronized (this) {
+            checkers = new ArrayList<>(mHandlerCheckers);
+        }
+        pw.println("WATCHDOG LOOPERS (dumpsys activity loopers)");
+        final PrintWriterPrinter printer = new PrintWriterPrinter(pw);
+        for (int i = 0; i < checkers.size(); i++) {
+            final HandlerChecker checker = checkers.get(i);
+            pw.print("  "); pw.print(checker.getName()); pw.println(":");
+            checker.mHandler.getLooper().dump(printer, "    ");
+            if (checker.mSampler != null) {
+                pw.println("    Recent dispatches:");
+                checker.mSampler.dump(pw, "      ");
+            }
+        }
+    }
+
     public static Watchdog getInstance() {
         if (sWatchdog == null) {
             sWatchdog = new Watchdog();
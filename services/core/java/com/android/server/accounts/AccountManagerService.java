@@ -82,6 +82,7 @@ import android.os.SystemClock;
 import android.os.UserHandle;
 import android.os.UserManager;
 import android.text.TextUtils;
+import android.util.ArrayMap;
 import android.util.Log;
 import android.util.Pair;
 import android.util.Slog;
@@ -207,6 +208,13 @@ public class AccountManagerService
         final Object dbLock = new Object(); // if needed, dbLock must be obtained before cacheLock
         /** protected by the {@link #cacheLock} */
         final HashMap<String, Account[]> accountCache = new LinkedHashMap<>();
+        /**
+         * protected by the {@link #cacheLock}
+         *
+         * All accounts in {@link #accountCache}, in order, or null if it has changed since the
+         * array was built. The array is never modified, so it can be handed out without copying.
+         */
+        private Account[] allAccountsSnapshot;
         /** protected by the {@link #cacheLock} */
         private final Map<Account, Map<String, String>> userDataCache = new HashMap<>();
         /** protected by the {@link #cacheLock} */
@@ -649,69 +657,128 @@ public class AccountManagerService
      */
     private Integer resolveAccountVisibility(Account account, @NonNull String packageName,
             UserAccounts accounts) {
-        Preconditions.checkNotNull(packageName, "packageName cannot be null");
-        int uid = -1;
-        try {
-            long identityToken = clearCallingIdentity();
-            try {
-                uid = mPackageManager.getPackageUidAsUser(packageName, accounts.userId);
-            } finally {
-                restoreCallingIdentity(identityToken);
-            }
-        } catch (NameNotFoundException e) {
-            Log.d(TAG, "Package not found " + e.getMessage());
-            return AccountManager.VISIBILITY_NOT_VISIBLE;
-        }
+        return new VisibilityResolver(packageName, accounts).resolve(account);
+    }
 
-        // System visibility can not be restricted.
-        if (UserHandle.isSameApp(uid, Process.SYSTEM_UID)) {
-            return AccountManager.VISIBILITY_VISIBLE;
+    /**
+     * Resolves the visibility of accounts to one package, see
+     * {@link #resolveAccountVisibility(Account, String, UserAccounts)}.
+     *
+     * Package manager lookups that do not depend on the account, and those that only depend on
+     * its type, are made at most once per resolver. A resolver should therefore only be used
+     * for a single call, such as filtering the accounts returned by one getAccounts call.
+     */
+    private final class VisibilityResolver {
+        private final String mPackageName;
+        private final UserAccounts mAccounts;
+
+        private boolean mUidResolved;
+        private int mUid = -1;
+        private Boolean mPrivileged;
+        private Boolean mProfileOwner;
+        private Boolean mLegacyAccess;
+        private Boolean mReadContacts;
+        // Account type -> result of checkPackageSignature().
+        private final ArrayMap<String, Integer> mSignatureCheckResults = new ArrayMap<>();
+
+        VisibilityResolver(@NonNull String packageName, UserAccounts accounts) {
+            Preconditions.checkNotNull(packageName, "packageName cannot be null");
+            mPackageName = packageName;
+            mAccounts = accounts;
         }
 
-        int signatureCheckResult =
-                checkPackageSignature(account.type, uid, accounts.userId);
+        /** Never returns AccountManager.VISIBILITY_UNDEFINED. */
+        int resolve(Account account) {
+            if (!mUidResolved) {
+                mUidResolved = true;
+                try {
+                    long identityToken = clearCallingIdentity();
+                    try {
+                        mUid = mPackageManager.getPackageUidAsUser(mPackageName, mAccounts.userId);
+                    } finally {
+                        restoreCallingIdentity(identityToken);
+                    }
+                } catch (NameNotFoundException e) {
+                    Log.d(TAG, "Package not found " + e.getMessage());
+                }
+            }
+            if (mUid == -1) {
+                return AccountManager.VISIBILITY_NOT_VISIBLE;
+            }
 
-        // Authenticator can not restrict visibility to itself.
-        if (signatureCheckResult == SIGNATURE_CHECK_UID_MATCH) {
-            return AccountManager.VISIBILITY_VISIBLE; // Authenticator can always see the account
-        }
+            // System visibility can not be restricted.
+            if (UserHandle.isSameApp(mUid, Process.SYSTEM_UID)) {
+                return AccountManager.VISIBILITY_VISIBLE;
+            }
 
-        // Return stored value if it was set.
-        int visibility = getAccountVisibilityFromCache(account, packageName, accounts);
+            Integer signatureCheckResult = mSignatureCheckResults.get(account.type);
+            if (signatureCheckResult == null) {
+                signatureCheckResult = checkPackageSignature(account.type, mUid, mAccounts.userId);
+                mSignatureCheckResults.put(account.type, signatureCheckResult);
+            }
 
-        if (AccountManager.VISIBILITY_UNDEFINED != visibility) {
-            return visibility;
-        }
+            // Authenticator can not restrict visibility to itself, it can always see the account.
+            if (signatureCheckResult == SIGNATURE_CHECK_UID_MATCH) {
+                return AccountManager.VISIBILITY_VISIBLE;
+            }
 
-        boolean isPrivileged = isPermittedForPackage(packageName, uid, accounts.userId,
-                Manifest.permission.GET_ACCOUNTS_PRIVILEGED);
+            // Return stored value if it was set.
+            int visibility = getAccountVisibilityFromCache(account, mPackageName, mAccounts);
+
+            if (AccountManager.VISIBILITY_UNDEFINED != visibility) {
+                return visibility;
+            }
 
-        // Device/Profile owner gets visibility by default.
-        if (isProfileOwner(uid)) {
-            return AccountManager.VISIBILITY_VISIBLE;
+            if (mPrivileged == null) {
+                mPrivileged = isPermittedForPackage(mPackageName, mUid, mAccounts.userId,
+                        Manifest.permission.GET_ACCOUNTS_PRIVILEGED);
+            }
+
+            // Device/Profile owner gets visibility by default.
+            if (mProfileOwner == null) {
+                mProfileOwner = isProfileOwner(mUid);
+            }
+            if (mProfileOwner) {
+                return AccountManager.VISIBILITY_VISIBLE;
+            }
+
+            if ((signatureCheckResult != SIGNATURE_CHECK_MISMATCH)
+                    || hasLegacyAccess()
+                    || (hasReadContacts()
+                        && accountTypeManagesContacts(account.type, mAccounts.userId))
+                    || mPrivileged) {
+                // Use legacy for preO apps with GET_ACCOUNTS permission or pre/postO with
+                // signature match.
+                visibility = getAccountVisibilityFromCache(account,
+                        AccountManager.PACKAGE_NAME_KEY_LEGACY_VISIBLE, mAccounts);
+                if (AccountManager.VISIBILITY_UNDEFINED == visibility) {
+                    visibility = AccountManager.VISIBILITY_USER_MANAGED_VISIBLE;
+                }
+            } else {
+                visibility = getAccountVisibilityFromCache(account,
+                        AccountManager.PACKAGE_NAME_KEY_LEGACY_NOT_VISIBLE, mAccounts);
+                if (AccountManager.VISIBILITY_UNDEFINED == visibility) {
+                    visibility = AccountManager.VISIBILITY_USER_MANAGED_NOT_VISIBLE;
+                }
+            }
+            return visibility;
         }
 
-        boolean preO = isPreOApplication(packageName);
-        if ((signatureCheckResult != SIGNATURE_CHECK_MISMATCH)
-                || (preO && checkGetAccountsPermission(packageName, uid, accounts.userId))
-                || (checkReadContactsPermission(packageName, uid, accounts.userId)
-                    && accountTypeManagesContacts(account.type, accounts.userId))
-                || isPrivileged) {
-            // Use legacy for preO apps with GET_ACCOUNTS permission or pre/postO with signature
-            // match.
-            visibility = getAccountVisibilityFromCache(account,
-                    AccountManager.PACKAGE_NAME_KEY_LEGACY_VISIBLE, accounts);
-            if (AccountManager.VISIBILITY_UNDEFINED == visibility) {
-                visibility = AccountManager.VISIBILITY_USER_MANAGED_VISIBLE;
+        /** Whether this is a pre-O package holding GET_ACCOUNTS. */
+        private boolean hasLegacyAccess() {
+            if (mLegacyAccess == null) {
+                mLegacyAccess = isPreOApplication(mPackageName)
+                        && checkGetAccountsPermission(mPackageName, mUid, mAccounts.userId);
             }
-        } else {
-            visibility = getAccountVisibilityFromCache(account,
-                    AccountManager.PACKAGE_NAME_KEY_LEGACY_NOT_VISIBLE, accounts);
-            if (AccountManager.VISIBILITY_UNDEFINED == visibility) {
-                visibility = AccountManager.VISIBILITY_USER_MANAGED_NOT_VISIBLE;
+            return mLegacyAccess;
+        }
+
+        private boolean hasReadContacts() {
+            if (mReadContacts == null) {
+                mReadContacts = checkReadContactsPermission(mPackageName, mUid, mAccounts.userId);
             }
+            return mReadContacts;
         }
-        return visibility;
     }
 
     /**
@@ -1166,6 +1233,7 @@ public class AccountManagerService
                 final Map<Long, Account> accountsMap = accountsDb.findAllDeAccounts();
                 try {
                     accounts.accountCache.clear();
+                    accounts.allAccountsSnapshot = null;
                     final HashMap<String, ArrayList<String>> accountNamesByType
                             = new LinkedHashMap<>();
                     for (Entry<Long, Account> accountEntry : accountsMap.entrySet()) {
@@ -1230,6 +1298,7 @@ public class AccountManagerService
                         }
                         accounts.accountCache.put(accountType, accountsForType);
                     }
+                    accounts.allAccountsSnapshot = null;
                     accounts.visibilityCache.putAll(accountsDb.findAllVisibilityValues());
                 } finally {
                     if (accountDeleted) {
@@ -5779,6 +5848,7 @@ public class AccountManagerService
                 newAccountsForType = newAccountsList.toArray(newAccountsForType);
                 accounts.accountCache.put(account.type, newAccountsForType);
             }
+            accounts.allAccountsSnapshot = null;
         }
         accounts.userDataCache.remove(account);
         accounts.authTokenCache.remove(account);
@@ -5803,6 +5873,7 @@ public class AccountManagerService
                 : UUID.randomUUID().toString();
         newAccountsForType[oldLength] = new Account(account, token);
         accounts.accountCache.put(account.type, newAccountsForType);
+        accounts.allAccountsSnapshot = null;
         return newAccountsForType[oldLength];
     }
 
@@ -5814,8 +5885,10 @@ public class AccountManagerService
             visibilityFilterPackage = getPackageNameForUid(callingUid);
         }
         Map<Account, Integer> firstPass = new LinkedHashMap<>();
+        final VisibilityResolver resolver =
+                new VisibilityResolver(visibilityFilterPackage, accounts);
         for (Account account : unfiltered) {
-            int visibility = resolveAccountVisibility(account, visibilityFilterPackage, accounts);
+            int visibility = resolver.resolve(account);
             if ((visibility == AccountManager.VISIBILITY_VISIBLE
                     || visibility == AccountManager.VISIBILITY_USER_MANAGED_VISIBLE)
                     || (includeManagedNotVisible
@@ -5928,32 +6001,44 @@ public class AccountManagerService
             if (accounts == null) {
                 return EMPTY_ACCOUNT_ARRAY;
             } else {
-                return filterAccounts(userAccounts, Arrays.copyOf(accounts, accounts.length),
-                        callingUid, callingPackage, includeManagedNotVisible);
+                // The cached arrays are replaced rather than modified, and filterAccounts()
+                // does not modify its input, so there is no need to copy.
+                return filterAccounts(userAccounts, accounts, callingUid, callingPackage,
+                        includeManagedNotVisible);
             }
         } else {
-            int totalLength = 0;
             Account[] accountsArray;
             synchronized (userAccounts.cacheLock) {
-                for (Account[] accounts : userAccounts.accountCache.values()) {
-                    totalLength += accounts.length;
-                }
-                if (totalLength == 0) {
-                    return EMPTY_ACCOUNT_ARRAY;
-                }
-                accountsArray = new Account[totalLength];
-                totalLength = 0;
-                for (Account[] accountsOfType : userAccounts.accountCache.values()) {
-                    System.arraycopy(accountsOfType, 0, accountsArray, totalLength,
-                            accountsOfType.length);
-                    totalLength += accountsOfType.length;
-                }
+                accountsArray = getAllAccountsSnapshotLocked(userAccounts);
+            }
+            if (accountsArray.length == 0) {
+                return EMPTY_ACCOUNT_ARRAY;
             }
             return filterAccounts(userAccounts, accountsArray, callingUid, callingPackage,
                     includeManagedNotVisible);
         }
     }
 
+    /** protected by the {@code cacheLock} */
+    private static Account[] getAllAccountsSnapshotLocked(UserAccounts userAccounts) {
+        if (userAccounts.allAccountsSnapshot != null) {
+            return userAccounts.allAccountsSnapshot;
+        }
+        int totalLength = 0;
+        for (Account[] accounts : userAccounts.accountCache.values()) {
+            totalLength += accounts.length;
+        }
+        final Account[] accountsArray = new Account[totalLength];
+        totalLength = 0;
+        for (Account[] accountsOfType : userAccounts.accountCache.values()) {
+            System.arraycopy(accountsOfType, 0, accountsArray, totalLength,
+                    accountsOfType.length);
+            totalLength += accountsOfType.length;
+        }
+        userAccounts.allAccountsSnapshot = accountsArray;
+        return accountsArray;
+    }
+
     /** protected by the {@code dbLock}, {@code cacheLock} */
     protected void writeUserDataIntoCacheLocked(UserAccounts accounts,
             Account account, String key, String value) {
@@ -17,6 +17,7 @@
 package com.android.server.am;
 
 import android.annotation.NonNull;
+import android.app.ActivityManager;
 import android.graphics.Bitmap;
 import android.graphics.BitmapFactory;
 import android.os.Debug;
@@ -29,6 +30,8 @@ import android.util.AtomicFile;
 import android.util.Slog;
 import android.util.SparseArray;
 import android.util.SparseBooleanArray;
+import android.util.SparseIntArray;
+import android.util.SparseLongArray;
 import android.util.Xml;
 
 import com.android.internal.annotations.VisibleForTesting;
@@ -271,9 +274,10 @@ public class TaskPersister {
                 if (queueNdx < 0 && task.isPersistable) {
                     mWriteQueue.add(new TaskWriteQueueItem(task));
                 }
-            } else {
+            } else if (!isDummyQueued()) {
                 // Dummy. Ensures removeObsoleteFiles is called when LazyTaskThreadWriter is
-                // notified.
+                // notified. One queued dummy is enough, the check runs once the queue drains and
+                // sees the state at that time.
                 mWriteQueue.add(new WriteQueueItem());
             }
             if (flush || mWriteQueue.size() > MAX_WRITE_QUEUE_LENGTH) {
@@ -290,6 +294,15 @@ public class TaskPersister {
         yieldIfQueueTooDeep();
     }
 
+    private boolean isDummyQueued() {
+        for (int queueNdx = mWriteQueue.size() - 1; queueNdx >= 0; --queueNdx) {
+            if (mWriteQueue.get(queueNdx).getClass() == WriteQueueItem.class) {
+                return true;
+            }
+        }
+        return false;
+    }
+
     void flush() {
         synchronized (this) {
             mNextWriteTime = FLUSH_QUEUE;
@@ -411,6 +424,91 @@ public class TaskPersister {
         return null;
     }
 
+    /**
+     * Returns the ids of the tasks in {@code taskFiles} that don't need to be restored because
+     * recents would trim them right away: all but the {@code maxTasks} most recently moved ones,
+     * the order recents is kept in, except for the affiliates of the tasks that are kept. Only
+     * the root tag of each file is read. Files that can't be read are never skipped, so that the
+     * full restore deletes them if they are corrupt.
+     */
+    @VisibleForTesting
+    static SparseBooleanArray findTasksToSkip(File[] taskFiles, int maxTasks,
+            SparseBooleanArray preaddedTasks) {
+        final SparseBooleanArray skippedTasks = new SparseBooleanArray();
+        final ArrayList<Integer> taskIds = new ArrayList<>(taskFiles.length);
+        final SparseLongArray lastTimeMoved = new SparseLongArray(taskFiles.length);
+        final SparseIntArray prevAffiliates = new SparseIntArray(taskFiles.length);
+        final SparseIntArray nextAffiliates = new SparseIntArray(taskFiles.length);
+        for (File taskFile : taskFiles) {
+            final String fileName = taskFile.getName();
+            if (!fileName.endsWith(TASK_FILENAME_SUFFIX)) {
+                continue;
+            }
+            final int taskId;
+            try {
+                taskId = Integer.parseInt(fileName.substring(0 /* beginIndex */,
+                        fileName.length() - TASK_FILENAME_SUFFIX.length()));
+            } catch (NumberFormatException e) {
+                continue;
+            }
+            if (preaddedTasks.get(taskId, false)) {
+                continue;
+            }
+
+            BufferedReader reader = null;
+            try {
+                reader = new BufferedReader(new FileReader(taskFile));
+                final XmlPullParser in = Xml.newPullParser();
+                in.setInput(reader);
+                int event;
+                while ((event = in.next()) != XmlPullParser.END_DOCUMENT
+                        && event != XmlPullParser.START_TAG) {
+                    // Only the root tag is needed.
+                }
+                if (event == XmlPullParser.START_TAG && TAG_TASK.equals(in.getName())) {
+                    lastTimeMoved.put(taskId, Long.parseLong(
+                            in.getAttributeValue(null, TaskRecord.ATTR_LASTTIMEMOVED)));
+                    prevAffiliates.put(taskId, Integer.parseInt(
+                            in.getAttributeValue(null, TaskRecord.ATTR_PREV_AFFILIATION)));
+                    nextAffiliates.put(taskId, Integer.parseInt(
+                            in.getAttributeValue(null, TaskRecord.ATTR_NEXT_AFFILIATION)));
+                    taskIds.add(taskId);
+                }
+            } catch (Exception e) {
+                // Left to the full restore.
+            } finally {
+                IoUtils.closeQuietly(reader);
+            }
+        }
+
+        final int taskCount = taskIds.size();
+        if (taskCount <= maxTasks) {
+            return skippedTasks;
+        }
+        Collections.sort(taskIds, (lhs, rhs) -> Long.compare(lastTimeMoved.get(rhs),
+                lastTimeMoved.get(lhs)));
+        for (int i = maxTasks; i < taskCount; i++) {
+            skippedTasks.put(taskIds.get(i), true);
+        }
+        // Restore the whole affiliation chain of each kept task, taskIdToTask() can only link
+        // tasks that were restored.
+        final ArrayList<Integer> keptTaskIds = new ArrayList<>(taskIds.subList(0, maxTasks));
+        while (!keptTaskIds.isEmpty()) {
+            final int taskId = keptTaskIds.remove(keptTaskIds.size() - 1);
+            final int prevAffiliate = prevAffiliates.get(taskId, TaskRecord.INVALID_TASK_ID);
+            if (skippedTasks.get(prevAffiliate, false)) {
+                skippedTasks.delete(prevAffiliate);
+                keptTaskIds.add(prevAffiliate);
+            }
+            final int nextAffiliate = nextAffiliates.get(taskId, TaskRecord.INVALID_TASK_ID);
+            if (skippedTasks.get(nextAffiliate, false)) {
+                skippedTasks.delete(nextAffiliate);
+                keptTaskIds.add(nextAffiliate);
+            }
+        }
+        return skippedTasks;
+    }
+
     List<TaskRecord> restoreTasksForUserLocked(final int userId, SparseBooleanArray preaddedTasks) {
         final ArrayList<TaskRecord> tasks = new ArrayList<TaskRecord>();
         ArraySet<Integer> recoveredTaskIds = new ArraySet<Integer>();
@@ -423,6 +521,17 @@ public class TaskPersister {
             return tasks;
         }
 
+        // Tasks beyond the maximum number of recents would be trimmed by the next addRecent, so
+        // don't spend time parsing them while the user is being unlocked. Picking them needs a
+        // look at every file, which is only worth it when there are more files than recents
+        // keeps; obsolete files are normally deleted as recents changes. The limit doesn't count
+        // preadded tasks, trimming recents picks the right ones to drop. Skipped files are kept
+        // on disk, it is up to recents to decide when they are obsolete.
+        final int maxTasks = ActivityManager.getMaxRecentTasksStatic();
+        final SparseBooleanArray skippedTasks = recentFiles.length > maxTasks
+                ? findTasksToSkip(recentFiles, maxTasks, preaddedTasks) : null;
+        int skippedCount = 0;
+
         for (int taskNdx = 0; taskNdx < recentFiles.length; ++taskNdx) {
             File taskFile = recentFiles[taskNdx];
             if (DEBUG) {
@@ -442,6 +551,12 @@ public class TaskPersister {
                             " has already been created so we don't restore again");
                     continue;
                 }
+                if (skippedTasks != null && skippedTasks.get(taskId, false)) {
+                    // Don't let removeObsoleteFiles() below delete it.
+                    recoveredTaskIds.add(taskId);
+                    skippedCount++;
+                    continue;
+                }
             } catch (NumberFormatException e) {
                 Slog.w(TAG, "Unexpected task file name", e);
                 continue;
@@ -511,6 +626,11 @@ public class TaskPersister {
             }
         }
 
+        if (skippedCount > 0) {
+            Slog.i(TAG, "restoreTasksForUserLocked: skipped " + skippedCount
+                    + " tasks beyond the maximum of " + maxTasks + " for user " + userId);
+        }
+
         if (!DEBUG) {
             removeObsoleteFiles(recoveredTaskIds, userTasksDir.listFiles());
         }
@@ -538,7 +658,8 @@ public class TaskPersister {
         return tasks;
     }
 
-    private static void removeObsoleteFiles(ArraySet<Integer> persistentTaskIds, File[] files) {
+    @VisibleForTesting
+    static void removeObsoleteFiles(ArraySet<Integer> persistentTaskIds, File[] files) {
         if (DEBUG) Slog.d(TAG, "removeObsoleteFiles: persistentTaskIds=" + persistentTaskIds +
                 " files=" + files);
         if (files == null) {
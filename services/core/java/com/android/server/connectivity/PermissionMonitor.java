@@ -182,9 +182,11 @@ public class PermissionMonitor {
         return array;
     }
 
+    // Only calls netd for non-empty sets, and clears all UIDs with a single call since clearing
+    // does not depend on the permission.
     private void update(Set<Integer> users, Map<Integer, Boolean> apps, boolean add) {
         List<Integer> network = new ArrayList<>();
-        List<Integer> system = new ArrayList<>();
+        List<Integer> system = add ? new ArrayList<>() : network;
         for (Entry<Integer, Boolean> app : apps.entrySet()) {
             List<Integer> list = app.getValue() ? system : network;
             for (int user : users) {
@@ -193,11 +195,14 @@ public class PermissionMonitor {
         }
         try {
             if (add) {
-                mNetd.setPermission("NETWORK", toIntArray(network));
-                mNetd.setPermission("SYSTEM", toIntArray(system));
-            } else {
+                if (!network.isEmpty()) {
+                    mNetd.setPermission("NETWORK", toIntArray(network));
+                }
+                if (!system.isEmpty()) {
+                    mNetd.setPermission("SYSTEM", toIntArray(system));
+                }
+            } else if (!network.isEmpty()) {
                 mNetd.clearPermission(toIntArray(network));
-                mNetd.clearPermission(toIntArray(system));
             }
         } catch (RemoteException e) {
             loge("Exception when updating permissions: " + e);
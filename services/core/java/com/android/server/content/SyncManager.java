@@ -196,6 +196,13 @@ public class SyncManager {
      */
     private static final long SYNC_DELAY_ON_CONFLICT = 10*1000; // 10 seconds
 
+    /**
+     * A delayed sync is pushed back by up to this much so that it becomes ready together with
+     * an already pending sync for the same account and network type, letting both run in the
+     * same network window instead of waking the radio twice.
+     */
+    private static final long SYNC_BATCH_WINDOW = 60*1000; // 60 seconds
+
     /**
      * Generate job ids in the range [MIN_SYNC_JOB_ID, MAX_SYNC_JOB_ID) to avoid conflicts with
      * other jobs scheduled by the system process.
@@ -249,6 +256,8 @@ public class SyncManager {
 
     private final SyncLogger mLogger;
 
+    private final SyncBatchStats mSyncBatchStats = new SyncBatchStats();
+
     private boolean isJobIdInUseLockedH(int jobId, List<JobInfo> pendingJobs) {
         for (JobInfo job: pendingJobs) {
             if (job.getId() == jobId) {
@@ -1517,6 +1526,18 @@ public class SyncManager {
                 }
                 return;
             }
+
+            if (minDelay > 0) {
+                final SyncOperation batchWith = findSyncToBatchWith(syncOperation, pending);
+                if (batchWith != null) {
+                    if (isLoggable) {
+                        Slog.v(TAG, "Batching " + syncOperation + " with " + batchWith);
+                    }
+                    minDelay += batchWith.expectedRuntime - syncOperation.expectedRuntime;
+                    syncOperation.expectedRuntime = batchWith.expectedRuntime;
+                    mSyncBatchStats.noteBatched();
+                }
+            }
         }
 
         // Syncs that are re-scheduled shouldn't get a new job id.
@@ -1557,6 +1578,34 @@ public class SyncManager {
                 syncOperation.target.userId, syncOperation.wakeLockName());
     }
 
+    /**
+     * Finds the pending one-off sync that {@code syncOperation} should become ready together
+     * with: the earliest one for the same account and network type that is expected to run
+     * no earlier than {@code syncOperation} and at most {@link #SYNC_BATCH_WINDOW} after it.
+     * Pending syncs with the same key are ignored, they are duplicates that were just cancelled.
+     */
+    static SyncOperation findSyncToBatchWith(SyncOperation syncOperation,
+            List<SyncOperation> pending) {
+        final SyncStorageEngine.EndPoint target = syncOperation.target;
+        SyncOperation batchWith = null;
+        for (SyncOperation op : pending) {
+            if (op.isPeriodic || op.key.equals(syncOperation.key)
+                    || op.target.userId != target.userId
+                    || !Objects.equals(op.target.account, target.account)
+                    || op.isNotAllowedOnMetered() != syncOperation.isNotAllowedOnMetered()) {
+                continue;
+            }
+            final long delta = op.expectedRuntime - syncOperation.expectedRuntime;
+            if (delta < 0 || delta > SYNC_BATCH_WINDOW) {
+                continue;
+            }
+            if (batchWith == null || op.expectedRuntime < batchWith.expectedRuntime) {
+                batchWith = op;
+            }
+        }
+        return batchWith;
+    }
+
     /**
      * Remove scheduled sync operations.
      * @param info limit the removals to operations that match this target. The target can
@@ -2012,6 +2061,7 @@ public class SyncManager {
             pw.println();
         }
         pw.print("memory low: "); pw.println(mStorageIsLow);
+        pw.print("batched syncs: "); mSyncBatchStats.dump(pw);
         pw.print("device idle: "); pw.println(mDeviceIsIdle);
         pw.print("reported active: "); pw.println(mReportedSyncActive);
 
@@ -2561,6 +2611,41 @@ public class SyncManager {
         }
     }
 
+    /**
+     * Counts the delayed syncs that were batched with another pending sync, each of which saved
+     * a separate network window, per day since boot.
+     */
+    private static class SyncBatchStats {
+        private static final long DAY_MILLIS = 24*60*60*1000;
+
+        private long mToday;
+        private int mBatchedToday;
+        private int mBatchedYesterday;
+        private long mBatchedTotal;
+
+        public synchronized void noteBatched() {
+            rollOverLocked();
+            mBatchedToday++;
+            mBatchedTotal++;
+        }
+
+        public synchronized void dump(PrintWriter pw) {
+            rollOverLocked();
+            pw.print("today="); pw.print(mBatchedToday);
+            pw.print(" yesterday="); pw.print(mBatchedYesterday);
+            pw.print(" total="); pw.println(mBatchedTotal);
+        }
+
+        private void rollOverLocked() {
+            final long today = SystemClock.elapsedRealtime() / DAY_MILLIS;
+            if (today != mToday) {
+                mBatchedYesterday = today == mToday + 1 ? mBatchedToday : 0;
+                mBatchedToday = 0;
+                mToday = today;
+            }
+        }
+    }
+
     class ServiceConnectionData {
         public final ActiveSyncContext activeSyncContext;
         public final IBinder adapter;
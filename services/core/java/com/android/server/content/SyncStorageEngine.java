@@ -40,6 +40,7 @@ import android.os.Message;
 import android.os.Parcel;
 import android.os.RemoteCallbackList;
 import android.os.RemoteException;
+import android.os.SystemClock;
 import android.os.UserHandle;
 import android.util.*;
 
@@ -136,6 +137,11 @@ public class SyncStorageEngine extends Handler {
     private static final int MSG_WRITE_STATISTICS = 2;
     private static final long WRITE_STATISTICS_DELAY = 1000*60*30; // 1/2 hour
 
+    // Changes that should be persisted soon, such as an authority starting to fail, are still
+    // batched for this long so that a burst of them (e.g. every authority failing when the
+    // network goes away) rewrites the file once.
+    private static final long WRITE_SOON_DELAY = 1000*5; // 5 seconds
+
     private static final boolean SYNC_ENABLED_DEFAULT = false;
 
     // the version of the accounts xml file format
@@ -423,6 +429,9 @@ public class SyncStorageEngine extends Handler {
 
     // We keep 4 weeks of stats.
     private final DayStats[] mDayStats = new DayStats[7*4];
+
+    // MSG_WRITE_* -> uptime the pending write message is due, see scheduleWriteLocked().
+    private final SparseLongArray mScheduledWriteTimes = new SparseLongArray();
     private final Calendar mCal;
     private int mYear;
     private int mYearInDays;
@@ -527,6 +536,22 @@ public class SyncStorageEngine extends Handler {
         }
     }
 
+    /**
+     * Makes sure the file written by {@code what} is written within {@code delayMillis}. A write
+     * that is already scheduled to happen by then is left alone, so changes are coalesced.
+     */
+    private void scheduleWriteLocked(int what, long delayMillis) {
+        final long uptimeMillis = SystemClock.uptimeMillis() + delayMillis;
+        if (hasMessages(what)) {
+            if (mScheduledWriteTimes.get(what) <= uptimeMillis) {
+                return;
+            }
+            removeMessages(what);
+        }
+        mScheduledWriteTimes.put(what, uptimeMillis);
+        sendMessageAtTime(obtainMessage(what), uptimeMillis);
+    }
+
     @Override public void handleMessage(Message msg) {
         if (msg.what == MSG_WRITE_STATUS) {
             synchronized (mAuthorities) {
@@ -1200,18 +1225,10 @@ public class SyncStorageEngine extends Handler {
 
             status.addEvent(event.toString());
 
-            if (writeStatusNow) {
-                writeStatusLocked();
-            } else if (!hasMessages(MSG_WRITE_STATUS)) {
-                sendMessageDelayed(obtainMessage(MSG_WRITE_STATUS),
-                        WRITE_STATUS_DELAY);
-            }
-            if (writeStatisticsNow) {
-                writeStatisticsLocked();
-            } else if (!hasMessages(MSG_WRITE_STATISTICS)) {
-                sendMessageDelayed(obtainMessage(MSG_WRITE_STATISTICS),
-                        WRITE_STATISTICS_DELAY);
-            }
+            scheduleWriteLocked(MSG_WRITE_STATUS,
+                    writeStatusNow ? WRITE_SOON_DELAY : WRITE_STATUS_DELAY);
+            scheduleWriteLocked(MSG_WRITE_STATISTICS,
+                    writeStatisticsNow ? WRITE_SOON_DELAY : WRITE_STATISTICS_DELAY);
         }
 
         reportChange(ContentResolver.SYNC_OBSERVER_TYPE_STATUS);
@@ -16,6 +16,7 @@
 
 package com.android.server.display;
 
+import com.android.internal.annotations.VisibleForTesting;
 import com.android.server.EventLogTags;
 import com.android.server.LocalServices;
 
@@ -61,10 +62,12 @@ class AutomaticBrightnessController {
 
     // Length of the ambient light horizon used to calculate the long term estimate of ambient
     // light.
-    private static final int AMBIENT_LIGHT_LONG_HORIZON_MILLIS = 10000;
+    @VisibleForTesting
+    static final int AMBIENT_LIGHT_LONG_HORIZON_MILLIS = 10000;
 
     // Length of the ambient light horizon used to calculate short-term estimate of ambient light.
-    private static final int AMBIENT_LIGHT_SHORT_HORIZON_MILLIS = 2000;
+    @VisibleForTesting
+    static final int AMBIENT_LIGHT_SHORT_HORIZON_MILLIS = 2000;
 
     // Callbacks for requesting updates to the display's power state
     private final Callbacks mCallbacks;
@@ -133,6 +136,14 @@ class AutomaticBrightnessController {
     // True if mAmbientLux holds a valid value.
     private boolean mAmbientLuxValid;
 
+    // Scratch output of calculateSlowAndFastAmbientLux(): the ambient light levels over the long
+    // and short horizons. They are only meaningful right after that call, callers must copy them
+    // before doing anything else and nothing else should read them.
+    @VisibleForTesting
+    float mSlowAmbientLux;
+    @VisibleForTesting
+    float mFastAmbientLux;
+
     // The ambient light level threshold at which to brighten or darken the screen.
     private float mBrighteningLuxThreshold;
     private float mDarkeningLuxThreshold;
@@ -360,7 +371,8 @@ class AutomaticBrightnessController {
         mDarkeningLuxThreshold = mDynamicHysteresis.getDarkeningThreshold(lux);
     }
 
-    private float calculateAmbientLux(long now, long horizon) {
+    @VisibleForTesting
+    float calculateAmbientLux(long now, long horizon) {
         if (DEBUG) {
             Slog.d(TAG, "calculateAmbientLux(" + now + ", " + horizon + ")");
         }
@@ -415,6 +427,70 @@ class AutomaticBrightnessController {
         return sum / totalWeight;
     }
 
+    /**
+     * Computes the same values as {@link #calculateAmbientLux} does for the long and the short
+     * horizon, in a single pass over the ring buffer, and stores them in {@link #mSlowAmbientLux}
+     * and {@link #mFastAmbientLux}. Samples are summed in the same order, so the results are
+     * identical. The results are only valid until the next call.
+     */
+    @VisibleForTesting
+    void calculateSlowAndFastAmbientLux(long now) {
+        final int N = mAmbientLightRingBuffer.size();
+        if (N == 0) {
+            Slog.e(TAG, "calculateSlowAndFastAmbientLux: No ambient light readings available");
+            mSlowAmbientLux = -1;
+            mFastAmbientLux = -1;
+            return;
+        }
+
+        final long slowHorizonStartTime = now - AMBIENT_LIGHT_LONG_HORIZON_MILLIS;
+        final long fastHorizonStartTime = now - AMBIENT_LIGHT_SHORT_HORIZON_MILLIS;
+        float slowSum = 0;
+        float slowTotalWeight = 0;
+        long slowEndTime = AMBIENT_LIGHT_PREDICTION_TIME_MILLIS;
+        float fastSum = 0;
+        float fastTotalWeight = 0;
+        long fastEndTime = AMBIENT_LIGHT_PREDICTION_TIME_MILLIS;
+        boolean fastDone = false;
+        // Walk back from the newest sample. The first sample at or before the start of a horizon
+        // is the last one to consider for it, clipped to the part within the horizon.
+        for (int i = N - 1; i >= 0; i--) {
+            final long eventTime = mAmbientLightRingBuffer.getTime(i);
+            final float lux = mAmbientLightRingBuffer.getLux(i);
+            if (!fastDone) {
+                final long startTime = Math.max(eventTime, fastHorizonStartTime) - now;
+                final float weight = calculateWeight(startTime, fastEndTime);
+                fastTotalWeight += weight;
+                fastSum += lux * weight;
+                fastEndTime = startTime;
+                fastDone = eventTime <= fastHorizonStartTime;
+            }
+            final long startTime = Math.max(eventTime, slowHorizonStartTime) - now;
+            final float weight = calculateWeight(startTime, slowEndTime);
+            slowTotalWeight += weight;
+            slowSum += lux * weight;
+            slowEndTime = startTime;
+            if (eventTime <= slowHorizonStartTime) {
+                break;
+            }
+        }
+        mSlowAmbientLux = slowSum / slowTotalWeight;
+        mFastAmbientLux = fastSum / fastTotalWeight;
+        if (DEBUG) {
+            Slog.d(TAG, "calculateSlowAndFastAmbientLux: slowAmbientLux=" + mSlowAmbientLux
+                    + ", fastAmbientLux=" + mFastAmbientLux);
+        }
+    }
+
+    /**
+     * Adds a light sample the way a sensor event does, without updating the ambient lux.
+     */
+    @VisibleForTesting
+    void addAmbientLightSample(long time, float lux) {
+        mAmbientLightRingBuffer.prune(time - mAmbientLightHorizon);
+        mAmbientLightRingBuffer.push(time, lux);
+    }
+
     private float calculateWeight(long startDelta, long endDelta) {
         return weightIntegral(endDelta) - weightIntegral(startDelta);
     }
@@ -491,8 +567,9 @@ class AutomaticBrightnessController {
         // proposed ambient light value since the slow value might be sufficiently far enough away
         // from the fast value to cause a recalculation while its actually just converging on
         // the fast value still.
-        float slowAmbientLux = calculateAmbientLux(time, AMBIENT_LIGHT_LONG_HORIZON_MILLIS);
-        float fastAmbientLux = calculateAmbientLux(time, AMBIENT_LIGHT_SHORT_HORIZON_MILLIS);
+        calculateSlowAndFastAmbientLux(time);
+        final float slowAmbientLux = mSlowAmbientLux;
+        final float fastAmbientLux = mFastAmbientLux;
 
         if (slowAmbientLux >= mBrighteningLuxThreshold &&
                 fastAmbientLux >= mBrighteningLuxThreshold && nextBrightenTransition <= time
@@ -62,6 +62,7 @@ import android.text.TextUtils;
 import android.util.IntArray;
 import android.util.Slog;
 import android.util.SparseArray;
+import android.util.SparseBooleanArray;
 import android.view.Display;
 import android.view.DisplayInfo;
 import android.view.Surface;
@@ -232,6 +233,11 @@ public final class DisplayManagerService extends SystemService {
     // May be used outside of the lock but only on the handler thread.
     private final ArrayList<CallbackRecord> mTempCallbacks = new ArrayList<CallbackRecord>();
 
+    // Displays with a display changed event queued but not yet delivered to callbacks.
+    // Further changes to such a display are folded into the queued event, since clients
+    // query the current display info when they receive it.
+    private final SparseBooleanArray mPendingDisplayChangedEvents = new SparseBooleanArray();
+
     // Temporary display info, used for comparing display configurations.
     private final DisplayInfo mTempDisplayInfo = new DisplayInfo();
 
@@ -1169,6 +1175,15 @@ public final class DisplayManagerService extends SystemService {
     }
 
     private void sendDisplayEventLocked(int displayId, int event) {
+        if (event == DisplayManagerGlobal.EVENT_DISPLAY_CHANGED) {
+            if (mPendingDisplayChangedEvents.get(displayId)) {
+                return;
+            }
+            mPendingDisplayChangedEvents.put(displayId, true);
+        } else {
+            // Keep change events after an added or removed event from being dropped.
+            mPendingDisplayChangedEvents.delete(displayId);
+        }
         Message msg = mHandler.obtainMessage(MSG_DELIVER_DISPLAY_EVENT, displayId, event);
         mHandler.sendMessage(msg);
     }
@@ -1195,6 +1210,10 @@ public final class DisplayManagerService extends SystemService {
         // Grab the lock and copy the callbacks.
         final int count;
         synchronized (mSyncRoot) {
+            if (event == DisplayManagerGlobal.EVENT_DISPLAY_CHANGED) {
+                // Changes from now on need a new event.
+                mPendingDisplayChangedEvents.delete(displayId);
+            }
             count = mCallbacks.size();
             mTempCallbacks.clear();
             for (int i = 0; i < count; i++) {
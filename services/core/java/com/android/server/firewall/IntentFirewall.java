@@ -29,6 +29,7 @@ import android.os.Handler;
 import android.os.Looper;
 import android.os.Message;
 import android.os.RemoteException;
+import android.os.SystemClock;
 import android.util.ArrayMap;
 import android.util.Slog;
 import android.util.Xml;
@@ -43,10 +44,12 @@ import java.io.File;
 import java.io.FileInputStream;
 import java.io.FileNotFoundException;
 import java.io.IOException;
+import java.io.PrintWriter;
 import java.util.ArrayList;
 import java.util.Arrays;
 import java.util.HashMap;
 import java.util.List;
+import java.util.concurrent.atomic.AtomicLongArray;
 
 public class IntentFirewall {
     static final String TAG = "IntentFirewall";
@@ -145,6 +148,13 @@ public class IntentFirewall {
     public boolean checkIntent(FirewallIntentResolver resolver, ComponentName resolvedComponent,
             int intentType, Intent intent, int callerUid, int callerPid, String resolvedType,
             int receivingUid) {
+        // Most devices have no rules for some or all intent types, there is nothing to query or
+        // allocate for those.
+        if (!resolver.hasRules()) {
+            mStats.recordUnfiltered(intentType);
+            return true;
+        }
+        final long startNanos = SystemClock.elapsedRealtimeNanos();
         boolean log = false;
         boolean block = false;
 
@@ -174,6 +184,9 @@ public class IntentFirewall {
             }
         }
 
+        mStats.recordCheck(intentType, candidateRules.size(), block,
+                SystemClock.elapsedRealtimeNanos() - startNanos);
+
         if (log) {
             logIntent(intentType, intent, callerUid, resolvedType);
         }
@@ -530,10 +543,95 @@ public class IntentFirewall {
             Rule[] rules = mRulesByComponent.get(componentName);
             rules = ArrayUtils.appendElement(Rule.class, rules, rule);
             mRulesByComponent.put(componentName, rules);
+            mHasRules = true;
+        }
+
+        @Override
+        public void addFilter(FirewallIntentFilter filter) {
+            super.addFilter(filter);
+            mHasRules = true;
+        }
+
+        /**
+         * Returns whether any rule could match an intent. Resolvers are not modified after they
+         * are installed by readRulesDir, so this doesn't need to look at the filters.
+         */
+        public boolean hasRules() {
+            return mHasRules;
         }
 
         private final ArrayMap<ComponentName, Rule[]> mRulesByComponent =
                 new ArrayMap<ComponentName, Rule[]>(0);
+        private boolean mHasRules;
+    }
+
+    /**
+     * Counts of intent checks per intent type, and how long the ones that had to evaluate rules
+     * took. Counters are updated without locking since checks with no rules to evaluate are on
+     * the hot path of every intent; a dump may see them slightly out of sync with each other.
+     */
+    private static final class CheckStats {
+        private final AtomicLongArray mUnfilteredCounts = new AtomicLongArray(3);
+        private final AtomicLongArray mCheckCounts = new AtomicLongArray(3);
+        private final AtomicLongArray mBlockedCounts = new AtomicLongArray(3);
+        private final AtomicLongArray mRulesEvaluated = new AtomicLongArray(3);
+        private final AtomicLongArray mTotalNanos = new AtomicLongArray(3);
+        private final AtomicLongArray mMaxNanos = new AtomicLongArray(3);
+
+        void recordUnfiltered(int intentType) {
+            mUnfilteredCounts.incrementAndGet(intentType);
+        }
+
+        void recordCheck(int intentType, int candidateCount, boolean blocked, long nanos) {
+            mCheckCounts.incrementAndGet(intentType);
+            if (blocked) {
+                mBlockedCounts.incrementAndGet(intentType);
+            }
+            mRulesEvaluated.addAndGet(intentType, candidateCount);
+            mTotalNanos.addAndGet(intentType, nanos);
+            long max;
+            while (nanos > (max = mMaxNanos.get(intentType))
+                    && !mMaxNanos.compareAndSet(intentType, max, nanos)) {
+                // Lost a race with another check, retry against its value.
+            }
+        }
+
+        void dump(PrintWriter pw, String prefix) {
+            for (int type = 0; type < mCheckCounts.length(); type++) {
+                final long count = mCheckCounts.get(type);
+                pw.print(prefix); pw.print(typeToString(type));
+                pw.print(": unfiltered="); pw.print(mUnfilteredCounts.get(type));
+                pw.print(" checked="); pw.print(count);
+                pw.print(" blocked="); pw.print(mBlockedCounts.get(type));
+                pw.print(" candidates="); pw.print(mRulesEvaluated.get(type));
+                pw.print(" avg="); pw.print(count == 0 ? 0 : mTotalNanos.get(type) / count / 1000);
+                pw.print("us max="); pw.print(mMaxNanos.get(type) / 1000); pw.println("us");
+            }
+        }
+
+        private static String typeToString(int intentType) {
+            switch (intentType) {
+                case TYPE_ACTIVITY: return TAG_ACTIVITY;
+                case TYPE_BROADCAST: return TAG_BROADCAST;
+                case TYPE_SERVICE: return TAG_SERVICE;
+                default: return Integer.toString(intentType);
+            }
+        }
+    }
+
+    private final CheckStats mStats = new CheckStats();
+
+    /**
+     * Dumps the number of intent filters of each intent type and the check counters. The caller
+     * must hold the global ActivityManagerService lock.
+     */
+    public void dump(PrintWriter pw) {
+        pw.println("INTENT FIREWALL (dumpsys activity firewall)");
+        pw.print("  Intent filters: activity="); pw.print(mActivityResolver.filterSet().size());
+        pw.print(" broadcast="); pw.print(mBroadcastResolver.filterSet().size());
+        pw.print(" service="); pw.println(mServiceResolver.filterSet().size());
+        pw.println("  Checks:");
+        mStats.dump(pw, "    ");
     }
 
     final FirewallHandler mHandler;
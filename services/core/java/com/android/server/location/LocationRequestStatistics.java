@@ -51,6 +51,20 @@ public class LocationRequestStatistics {
         }
     }
 
+    /**
+     * Signals that a location was delivered to one of a package's requests.
+     *
+     * @param packageName Name of package the location was delivered to.
+     * @param providerName Provider the location came from.
+     */
+    public void locationDelivered(String packageName, String providerName) {
+        PackageStatistics stats = statistics.get(
+                new PackageProviderKey(packageName, providerName));
+        if (stats != null) {
+            stats.mNumDeliveries++;
+        }
+    }
+
     /**
      * A key that holds both package and provider names.
      */
@@ -102,6 +116,8 @@ public class LocationRequestStatistics {
         private long mSlowestIntervalMs;
         // The total time this app has requested location (not including currently running requests).
         private long mTotalDurationMs;
+        // Number of locations delivered to this package's requests.
+        private long mNumDeliveries;
 
         private PackageStatistics() {
             mInitialElapsedTimeMs = SystemClock.elapsedRealtime();
@@ -175,6 +191,13 @@ public class LocationRequestStatistics {
             return mSlowestIntervalMs;
         }
 
+        /**
+         * Returns the number of locations delivered to this package's requests.
+         */
+        public long getNumDeliveries() {
+            return mNumDeliveries;
+        }
+
         /**
          * Returns true if a request is active for these tracked statistics.
          */
@@ -196,6 +219,7 @@ public class LocationRequestStatistics {
                     .append(" out of the last ")
                     .append((getTimeSinceFirstRequestMs() / 1000) / 60)
                     .append(" minutes");
+            s.append(": Delivered ").append(mNumDeliveries).append(" locations");
             if (isActive()) {
                 s.append(": Currently active");
             }
@@ -150,6 +150,7 @@ import android.os.RemoteException;
 import android.os.ResultReceiver;
 import android.os.ServiceManager;
 import android.os.ShellCallback;
+import android.os.SystemClock;
 import android.os.SystemProperties;
 import android.os.Trace;
 import android.os.UserHandle;
@@ -398,6 +399,16 @@ public class NetworkPolicyManagerService extends INetworkPolicyManager.Stub {
     @GuardedBy("mUidRulesFirstLock")
     final SparseBooleanArray mFirewallChainStates = new SparseBooleanArray();
 
+    /** Number of bulk firewall chain updates sent to netd, and skipped as unchanged. */
+    @GuardedBy("mUidRulesFirstLock")
+    private int mFirewallChainPushCount;
+    @GuardedBy("mUidRulesFirstLock")
+    private int mFirewallChainSkipCount;
+
+    /** How long the full rule updates took, printed as part of dump. */
+    @GuardedBy("mUidRulesFirstLock")
+    private final RuleUpdateTimes mRuleUpdateTimes = new RuleUpdateTimes();
+
     /**
      * UIDs that have been white-listed to always be able to have network access
      * in power save mode, except device idle (doze) still applies.
@@ -3014,6 +3025,13 @@ public class NetworkPolicyManagerService extends INetworkPolicyManager.Stub {
                 fout.increaseIndent();
                 mObservedHistory.dumpUL(fout);
                 fout.decreaseIndent();
+
+                fout.print("Firewall chain updates: pushed="); fout.print(mFirewallChainPushCount);
+                fout.print(" unchanged="); fout.println(mFirewallChainSkipCount);
+                fout.println("Rule update times:");
+                fout.increaseIndent();
+                mRuleUpdateTimes.dumpUL(fout);
+                fout.decreaseIndent();
             }
         }
     }
@@ -3133,10 +3151,11 @@ public class NetworkPolicyManagerService extends INetworkPolicyManager.Stub {
 
     void updateRulesForPowerSaveUL() {
         Trace.traceBegin(Trace.TRACE_TAG_NETWORK, "updateRulesForPowerSaveUL");
+        final long startTime = SystemClock.elapsedRealtime();
         try {
-            updateRulesForWhitelistedPowerSaveUL(mRestrictPower, FIREWALL_CHAIN_POWERSAVE,
-                    mUidFirewallPowerSaveRules);
+            updateRulesForWhitelistedPowerSaveUL(mRestrictPower, FIREWALL_CHAIN_POWERSAVE);
         } finally {
+            mRuleUpdateTimes.noteUL("powersave", SystemClock.elapsedRealtime() - startTime);
             Trace.traceEnd(Trace.TRACE_TAG_NETWORK);
         }
     }
@@ -3147,10 +3166,11 @@ public class NetworkPolicyManagerService extends INetworkPolicyManager.Stub {
 
     void updateRulesForDeviceIdleUL() {
         Trace.traceBegin(Trace.TRACE_TAG_NETWORK, "updateRulesForDeviceIdleUL");
+        final long startTime = SystemClock.elapsedRealtime();
         try {
-            updateRulesForWhitelistedPowerSaveUL(mDeviceIdleMode, FIREWALL_CHAIN_DOZABLE,
-                    mUidFirewallDozableRules);
+            updateRulesForWhitelistedPowerSaveUL(mDeviceIdleMode, FIREWALL_CHAIN_DOZABLE);
         } finally {
+            mRuleUpdateTimes.noteUL("deviceidle", SystemClock.elapsedRealtime() - startTime);
             Trace.traceEnd(Trace.TRACE_TAG_NETWORK);
         }
     }
@@ -3161,13 +3181,11 @@ public class NetworkPolicyManagerService extends INetworkPolicyManager.Stub {
 
     // NOTE: since both fw_dozable and fw_powersave uses the same map
     // (mPowerSaveTempWhitelistAppIds) for whitelisting, we can reuse their logic in this method.
-    private void updateRulesForWhitelistedPowerSaveUL(boolean enabled, int chain,
-            SparseIntArray rules) {
+    private void updateRulesForWhitelistedPowerSaveUL(boolean enabled, int chain) {
         if (enabled) {
             // Sync the whitelists before enabling the chain.  We don't care about the rules if
             // we are disabling the chain.
-            final SparseIntArray uidRules = rules;
-            uidRules.clear();
+            final SparseIntArray uidRules = new SparseIntArray();
             final List<UserInfo> users = mUserManager.getUsers();
             for (int ui = users.size() - 1; ui >= 0; ui--) {
                 UserInfo user = users.get(ui);
@@ -3231,9 +3249,9 @@ public class NetworkPolicyManagerService extends INetworkPolicyManager.Stub {
 
     void updateRulesForAppIdleUL() {
         Trace.traceBegin(Trace.TRACE_TAG_NETWORK, "updateRulesForAppIdleUL");
+        final long startTime = SystemClock.elapsedRealtime();
         try {
-            final SparseIntArray uidRules = mUidFirewallStandbyRules;
-            uidRules.clear();
+            final SparseIntArray uidRules = new SparseIntArray();
 
             // Fully update the app idle firewall chain.
             final List<UserInfo> users = mUserManager.getUsers();
@@ -3254,6 +3272,7 @@ public class NetworkPolicyManagerService extends INetworkPolicyManager.Stub {
 
             setUidFirewallRulesUL(FIREWALL_CHAIN_STANDBY, uidRules, CHAIN_TOGGLE_NONE);
         } finally {
+            mRuleUpdateTimes.noteUL("appidle", SystemClock.elapsedRealtime() - startTime);
             Trace.traceEnd(Trace.TRACE_TAG_NETWORK);
         }
     }
@@ -3318,6 +3337,7 @@ public class NetworkPolicyManagerService extends INetworkPolicyManager.Stub {
             Trace.traceBegin(Trace.TRACE_TAG_NETWORK,
                     "updateRulesForGlobalChangeAL: " + (restrictedNetworksChanged ? "R" : "-"));
         }
+        final long startTime = SystemClock.elapsedRealtime();
         try {
             updateRulesForAppIdleUL();
             updateRulesForRestrictPowerUL();
@@ -3329,6 +3349,7 @@ public class NetworkPolicyManagerService extends INetworkPolicyManager.Stub {
                 updateNetworkRulesNL();
             }
         } finally {
+            mRuleUpdateTimes.noteUL("globalchange", SystemClock.elapsedRealtime() - startTime);
             Trace.traceEnd(Trace.TRACE_TAG_NETWORK);
         }
     }
@@ -3369,6 +3390,7 @@ public class NetworkPolicyManagerService extends INetworkPolicyManager.Stub {
         if (Trace.isTagEnabled(Trace.TRACE_TAG_NETWORK)) {
             Trace.traceBegin(Trace.TRACE_TAG_NETWORK, "updateRulesForRestrictPowerUL-" + type);
         }
+        final long startTime = SystemClock.elapsedRealtime();
         try {
             // update rules for all installed applications
 
@@ -3412,6 +3434,8 @@ public class NetworkPolicyManagerService extends INetworkPolicyManager.Stub {
                 }
             }
         } finally {
+            mRuleUpdateTimes.noteUL(type == TYPE_RESTRICT_POWER ? "allapps-power"
+                    : "allapps-background", SystemClock.elapsedRealtime() - startTime);
             Trace.traceEnd(Trace.TRACE_TAG_NETWORK);
         }
     }
@@ -4118,8 +4142,17 @@ public class NetworkPolicyManagerService extends INetworkPolicyManager.Stub {
      * Set uid rules on a particular firewall chain. This is going to synchronize the rules given
      * here to netd.  It will clean up dead rules and make sure the target chain only contains rules
      * specified here.
+     *
+     * <p>Nothing is sent to netd if the chain already holds exactly these rules, which is the
+     * common case when device idle or battery saver is toggled.
      */
-    private void setUidFirewallRulesUL(int chain, SparseIntArray uidRules) {
+    @VisibleForTesting
+    void setUidFirewallRulesUL(int chain, SparseIntArray uidRules) {
+        final SparseIntArray currentRules = getUidFirewallRulesUL(chain);
+        if (currentRules != null && firewallRulesEqual(currentRules, uidRules)) {
+            mFirewallChainSkipCount++;
+            return;
+        }
         try {
             int size = uidRules.size();
             int[] uids = new int[size];
@@ -4128,7 +4161,15 @@ public class NetworkPolicyManagerService extends INetworkPolicyManager.Stub {
                 uids[index] = uidRules.keyAt(index);
                 rules[index] = uidRules.valueAt(index);
             }
+            mFirewallChainPushCount++;
             mNetworkManager.setFirewallUidRules(chain, uids, rules);
+            // Only remember rules netd accepted, so a failed update is retried next time.
+            if (currentRules != null) {
+                currentRules.clear();
+                for (int i = 0; i < size; i++) {
+                    currentRules.put(uids[i], rules[i]);
+                }
+            }
         } catch (IllegalStateException e) {
             Log.wtf(TAG, "problem setting firewall uid rules", e);
         } catch (RemoteException e) {
@@ -4136,6 +4177,41 @@ public class NetworkPolicyManagerService extends INetworkPolicyManager.Stub {
         }
     }
 
+    /**
+     * Returns the rules last sent to netd for the given chain, or null for unknown chains.
+     */
+    private SparseIntArray getUidFirewallRulesUL(int chain) {
+        switch (chain) {
+            case FIREWALL_CHAIN_DOZABLE:
+                return mUidFirewallDozableRules;
+            case FIREWALL_CHAIN_STANDBY:
+                return mUidFirewallStandbyRules;
+            case FIREWALL_CHAIN_POWERSAVE:
+                return mUidFirewallPowerSaveRules;
+            default:
+                return null;
+        }
+    }
+
+    /**
+     * Returns whether two rule tables have the same effect, {@link #FIREWALL_RULE_DEFAULT}
+     * entries being the same as no entry.
+     */
+    private static boolean firewallRulesEqual(SparseIntArray left, SparseIntArray right) {
+        return containsFirewallRules(left, right) && containsFirewallRules(right, left);
+    }
+
+    private static boolean containsFirewallRules(SparseIntArray rules, SparseIntArray subset) {
+        for (int i = subset.size() - 1; i >= 0; i--) {
+            final int rule = subset.valueAt(i);
+            if (rule != FIREWALL_RULE_DEFAULT
+                    && rules.get(subset.keyAt(i), FIREWALL_RULE_DEFAULT) != rule) {
+                return false;
+            }
+        }
+        return true;
+    }
+
     /**
      * Add or remove a uid to the firewall blacklist for all network ifaces.
      */
@@ -4503,6 +4579,43 @@ public class NetworkPolicyManagerService extends INetworkPolicyManager.Stub {
         }
     }
 
+    /**
+     * Count, last, average and maximum duration of each kind of full rule update.
+     */
+    private static final class RuleUpdateTimes {
+        // {count, last, total, max} in milliseconds, by update name.
+        private final ArrayMap<String, long[]> mTimes = new ArrayMap<>();
+
+        @GuardedBy("mUidRulesFirstLock")
+        void noteUL(String name, long durationMs) {
+            long[] times = mTimes.get(name);
+            if (times == null) {
+                times = new long[4];
+                mTimes.put(name, times);
+            }
+            times[0]++;
+            times[1] = durationMs;
+            times[2] += durationMs;
+            times[3] = Math.max(times[3], durationMs);
+        }
+
+        @GuardedBy("mUidRulesFirstLock")
+        void dumpUL(IndentingPrintWriter fout) {
+            if (mTimes.isEmpty()) {
+                fout.println("NONE");
+                return;
+            }
+            for (int i = 0; i < mTimes.size(); i++) {
+                final long[] times = mTimes.valueAt(i);
+                fout.print(mTimes.keyAt(i));
+                fout.print(": count="); fout.print(times[0]);
+                fout.print(" last="); fout.print(times[1]);
+                fout.print("ms avg="); fout.print(times[2] / times[0]);
+                fout.print("ms max="); fout.print(times[3]); fout.println("ms");
+            }
+        }
+    }
+
     private class NotificationId {
         private final String mTag;
         private final int mId;
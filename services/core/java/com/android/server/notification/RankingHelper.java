@@ -33,6 +33,7 @@ import android.content.pm.PackageManager.NameNotFoundException;
 import android.content.pm.ParceledListSlice;
 import android.metrics.LogMaker;
 import android.os.Build;
+import android.os.SystemClock;
 import android.os.UserHandle;
 import android.provider.Settings.Secure;
 import android.service.notification.NotificationListenerService.Ranking;
@@ -85,11 +86,16 @@ public class RankingHelper implements RankingConfig {
     private static final boolean DEFAULT_SHOW_BADGE = true;
 
     private final NotificationSignalExtractor[] mSignalExtractors;
+    // Parallel to mSignalExtractors.
+    private final ExtractorStats[] mExtractorStats;
     private final NotificationComparator mPreliminaryComparator;
     private final GlobalSortKeyComparator mFinalComparator = new GlobalSortKeyComparator();
 
     private final ArrayMap<String, Record> mRecords = new ArrayMap<>(); // pkg|uid => Record
     private final ArrayMap<String, NotificationRecord> mProxyByGroupTmp = new ArrayMap<>();
+    // Scratch state for sort(), guarded by mProxyByGroupTmp.
+    private final ArrayList<NotificationRecord> mOrderBeforeTmp = new ArrayList<>();
+    private final StringBuilder mSortKeyTmp = new StringBuilder();
     private final ArrayMap<String, Record> mRestoredWithoutUids = new ArrayMap<>(); // pkg => Record
 
     private final Context mContext;
@@ -109,7 +115,9 @@ public class RankingHelper implements RankingConfig {
 
         final int N = extractorNames.length;
         mSignalExtractors = new NotificationSignalExtractor[N];
+        mExtractorStats = new ExtractorStats[N];
         for (int i = 0; i < N; i++) {
+            mExtractorStats[i] = new ExtractorStats();
             try {
                 Class<?> extractorClass = mContext.getClassLoader().loadClass(extractorNames[i]);
                 NotificationSignalExtractor extractor =
@@ -143,14 +151,18 @@ public class RankingHelper implements RankingConfig {
         final int N = mSignalExtractors.length;
         for (int i = 0; i < N; i++) {
             NotificationSignalExtractor extractor = mSignalExtractors[i];
+            final long startNanos = SystemClock.elapsedRealtimeNanos();
+            boolean reconsider = false;
             try {
                 RankingReconsideration recon = extractor.process(r);
                 if (recon != null) {
                     mRankingHandler.requestReconsideration(recon);
+                    reconsider = true;
                 }
             } catch (Throwable t) {
                 Slog.w(TAG, "NotificationSignalExtractor failed.", t);
             }
+            mExtractorStats[i].record(SystemClock.elapsedRealtimeNanos() - startNanos, reconsider);
         }
     }
 
@@ -418,17 +430,25 @@ public class RankingHelper implements RankingConfig {
         mRankingHandler.requestSort();
     }
 
-    public void sort(ArrayList<NotificationRecord> notificationList) {
+    /**
+     * Sorts the given list by the global sort key of each record, rebuilding the keys.
+     *
+     * <p>Each key is built in a reused buffer and only turned into a new String when its content
+     * differs from the record's current key, so re-sorting a list whose keys are unchanged does
+     * not allocate them again.</p>
+     *
+     * @return whether the order of the list changed.
+     */
+    public boolean sort(ArrayList<NotificationRecord> notificationList) {
         final int N = notificationList.size();
-        // clear global sort keys
-        for (int i = N - 1; i >= 0; i--) {
-            notificationList.get(i).setGlobalSortKey(null);
-        }
+        boolean changed = false;
+        synchronized (mProxyByGroupTmp) {
+            mOrderBeforeTmp.clear();
+            mOrderBeforeTmp.addAll(notificationList);
 
-        // rank each record individually
-        Collections.sort(notificationList, mPreliminaryComparator);
+            // rank each record individually
+            Collections.sort(notificationList, mPreliminaryComparator);
 
-        synchronized (mProxyByGroupTmp) {
             // record individual ranking result and nominate proxies for each group
             for (int i = N - 1; i >= 0; i--) {
                 final NotificationRecord record = notificationList.get(i);
@@ -451,31 +471,55 @@ public class RankingHelper implements RankingConfig {
                 //   gsk="" < gsk=non-null-string < gsk=null
                 //
                 // We enforce this by using different prefixes for these three cases.
-                String groupSortKeyPortion;
+                final StringBuilder sortKey = mSortKeyTmp;
+                sortKey.setLength(0);
+                sortKey.append("intrsv=").append(record.isRecentlyIntrusive()
+                        && record.getImportance() > NotificationManager.IMPORTANCE_MIN
+                        ? '0' : '1');
+                sortKey.append(":grnk=");
+                appendRank(sortKey, groupProxy.getAuthoritativeRank());
+                sortKey.append(":gsmry=").append(
+                        record.getNotification().isGroupSummary() ? '0' : '1');
                 if (groupSortKey == null) {
-                    groupSortKeyPortion = "nsk";
+                    sortKey.append(":nsk");
                 } else if (groupSortKey.equals("")) {
-                    groupSortKeyPortion = "esk";
+                    sortKey.append(":esk");
                 } else {
-                    groupSortKeyPortion = "gsk=" + groupSortKey;
+                    sortKey.append(":gsk=").append(groupSortKey);
                 }
+                sortKey.append(":rnk=");
+                appendRank(sortKey, record.getAuthoritativeRank());
 
-                boolean isGroupSummary = record.getNotification().isGroupSummary();
-                record.setGlobalSortKey(
-                        String.format("intrsv=%c:grnk=0x%04x:gsmry=%c:%s:rnk=0x%04x",
-                        record.isRecentlyIntrusive()
-                                && record.getImportance() > NotificationManager.IMPORTANCE_MIN
-                                ? '0' : '1',
-                        groupProxy.getAuthoritativeRank(),
-                        isGroupSummary ? '0' : '1',
-                        groupSortKeyPortion,
-                        record.getAuthoritativeRank()));
+                // Keep the previous key if it is still valid, most records don't move.
+                final String previousKey = record.getGlobalSortKey();
+                if (previousKey == null || !previousKey.contentEquals(sortKey)) {
+                    record.setGlobalSortKey(sortKey.toString());
+                }
             }
             mProxyByGroupTmp.clear();
+
+            // Do a second ranking pass, using group proxies
+            Collections.sort(notificationList, mFinalComparator);
+
+            for (int i = 0; i < N; i++) {
+                if (mOrderBeforeTmp.get(i) != notificationList.get(i)) {
+                    changed = true;
+                    break;
+                }
+            }
+            mOrderBeforeTmp.clear();
         }
+        return changed;
+    }
 
-        // Do a second ranking pass, using group proxies
-        Collections.sort(notificationList, mFinalComparator);
+    /** Appends {@code rank} the way {@code String.format("0x%04x", rank)} would. */
+    private static void appendRank(StringBuilder sb, int rank) {
+        final String hex = Integer.toHexString(rank);
+        sb.append("0x");
+        for (int i = hex.length(); i < 4; i++) {
+            sb.append('0');
+        }
+        sb.append(hex);
     }
 
     public int indexOf(ArrayList<NotificationRecord> notificationList, NotificationRecord target) {
@@ -875,7 +919,10 @@ public class RankingHelper implements RankingConfig {
             for (int i = 0; i < N; i++) {
                 pw.print(prefix);
                 pw.print("  ");
-                pw.println(mSignalExtractors[i]);
+                pw.print(mSignalExtractors[i]);
+                pw.print(' ');
+                mExtractorStats[i].dump(pw);
+                pw.println();
             }
         }
         if (filter == null) {
@@ -1204,6 +1251,36 @@ public class RankingHelper implements RankingConfig {
     }
 
 
+    /** Time spent in one {@link NotificationSignalExtractor}, across all notifications. */
+    private static final class ExtractorStats {
+        private int mCount;
+        private int mReconsiderations;
+        private long mTotalNanos;
+        private long mMaxNanos;
+
+        synchronized void record(long nanos, boolean reconsider) {
+            mCount++;
+            if (reconsider) {
+                mReconsiderations++;
+            }
+            mTotalNanos += nanos;
+            mMaxNanos = Math.max(mMaxNanos, nanos);
+        }
+
+        synchronized void dump(PrintWriter pw) {
+            pw.print("count=");
+            pw.print(mCount);
+            pw.print(" avgUs=");
+            pw.print(mCount == 0 ? 0 : mTotalNanos / mCount / 1000);
+            pw.print(" maxUs=");
+            pw.print(mMaxNanos / 1000);
+            pw.print(" totalMs=");
+            pw.print(mTotalNanos / 1000000);
+            pw.print(" reconsiderations=");
+            pw.print(mReconsiderations);
+        }
+    }
+
     private static class Record {
         static int UNKNOWN_UID = UserHandle.USER_NULL;
 
@@ -447,6 +447,17 @@ public class ValidateNotificationPeople implements NotificationSignalExtractor {
             long timeStartMs = System.currentTimeMillis();
             for (final String handle: mPendingLookups) {
                 LookupResult lookupResult = null;
+                // A burst of notifications about the same person queues one reconsideration
+                // each, let all but the first one use the result the first one cached.
+                synchronized (mPeopleCache) {
+                    final String cacheKey = getCacheKey(mContext.getUserId(), handle);
+                    final LookupResult cached = mPeopleCache.get(cacheKey);
+                    if (cached != null && !cached.isExpired()) {
+                        if (DEBUG) Slog.d(TAG, "using lookupResult cached since enqueue");
+                        mContactAffinity = Math.max(mContactAffinity, cached.getAffinity());
+                        continue;
+                    }
+                }
                 final Uri uri = Uri.parse(handle);
                 if ("tel".equals(uri.getScheme())) {
                     if (DEBUG) Slog.d(TAG, "checking telephone URI: " + handle);
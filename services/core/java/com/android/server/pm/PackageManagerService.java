@@ -198,6 +198,7 @@ import android.os.Looper;
 import android.os.Message;
 import android.os.Parcel;
 import android.os.ParcelFileDescriptor;
+import android.os.Parcelable;
 import android.os.PatternMatcher;
 import android.os.Process;
 import android.os.RemoteCallbackList;
@@ -7366,13 +7367,24 @@ public class PackageManagerService extends IPackageManager.Stub
         return null;
     }
 
+    /**
+     * Returns a list slice for results that repeat package names, permissions and other strings
+     * many times, which are then only written once per transaction.
+     */
+    private static <T extends Parcelable> ParceledListSlice<T> newStringPooledListSlice(
+            List<T> list) {
+        final ParceledListSlice<T> slice = new ParceledListSlice<>(list);
+        slice.setPoolStrings(true);
+        return slice;
+    }
+
     @Override
     public @NonNull ParceledListSlice<ResolveInfo> queryIntentActivities(Intent intent,
             String resolvedType, int flags, int userId) {
         try {
             Trace.traceBegin(TRACE_TAG_PACKAGE_MANAGER, "queryIntentActivities");
 
-            return new ParceledListSlice<>(
+            return newStringPooledListSlice(
                     queryIntentActivitiesInternal(intent, resolvedType, flags, userId));
         } finally {
             Trace.traceEnd(TRACE_TAG_PACKAGE_MANAGER);
@@ -8754,7 +8766,7 @@ public class PackageManagerService extends IPackageManager.Stub
                 }
             }
 
-            return new ParceledListSlice<>(list);
+            return newStringPooledListSlice(list);
         }
     }
 
@@ -8894,7 +8906,7 @@ public class PackageManagerService extends IPackageManager.Stub
                 }
             }
 
-            return new ParceledListSlice<>(list);
+            return newStringPooledListSlice(list);
         }
     }
 
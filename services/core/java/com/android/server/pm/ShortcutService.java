@@ -128,7 +128,10 @@ import java.lang.annotation.Retention;
 import java.lang.annotation.RetentionPolicy;
 import java.net.URISyntaxException;
 import java.nio.charset.StandardCharsets;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
 import java.util.ArrayList;
+import java.util.Arrays;
 import java.util.Collections;
 import java.util.List;
 import java.util.concurrent.atomic.AtomicBoolean;
@@ -322,6 +325,10 @@ public class ShortcutService extends IShortcutService.Stub {
     @GuardedBy("mLock")
     private List<Integer> mDirtyUserIds = new ArrayList<>();
 
+    /** User ID -> digest of the user file content we last wrote, see saveUserLocked(). */
+    @GuardedBy("mLock")
+    private final SparseArray<byte[]> mUserFileDigests = new SparseArray<>();
+
     private final AtomicBoolean mBootCompleted = new AtomicBoolean();
 
     private static final int PACKAGE_MATCH_FLAGS =
@@ -637,6 +644,7 @@ public class ShortcutService extends IShortcutService.Stub {
 
         // Unload
         mUsers.delete(userId);
+        mUserFileDigests.delete(userId);
     }
 
     /** Return the base state file name */
@@ -940,21 +948,51 @@ public class ShortcutService extends IShortcutService.Stub {
 
         mShortcutBitmapSaver.waitForAllSavesLocked();
 
+        // Serialize first, so that a save that would not change anything, such as a launcher
+        // re-pinning the same shortcuts or an app updating a shortcut to what it already was,
+        // doesn't rewrite and sync the file.
+        final byte[] content;
+        try (ByteArrayOutputStream bos = new ByteArrayOutputStream()) {
+            saveUserInternalLocked(userId, bos, /* forBackup= */ false);
+            content = bos.toByteArray();
+        } catch (XmlPullParserException | IOException e) {
+            Slog.e(TAG, "Failed to serialize user " + userId, e);
+            return;
+        }
+        final byte[] digest = digestOf(content);
+        if (digest != null && Arrays.equals(digest, mUserFileDigests.get(userId))
+                && path.exists()) {
+            if (DEBUG) {
+                Slog.d(TAG, "Unchanged, not saving " + path);
+            }
+            return;
+        }
+
         path.getParentFile().mkdirs();
         final AtomicFile file = new AtomicFile(path);
         FileOutputStream os = null;
         try {
             os = file.startWrite();
-
-            saveUserInternalLocked(userId, os, /* forBackup= */ false);
-
+            os.write(content);
             file.finishWrite(os);
+            mUserFileDigests.put(userId, digest);
 
             // Remove all dangling bitmap files.
             cleanupDanglingBitmapDirectoriesLocked(userId);
-        } catch (XmlPullParserException | IOException e) {
+        } catch (IOException e) {
             Slog.e(TAG, "Failed to write to file " + file.getBaseFile(), e);
             file.failWrite(os);
+            mUserFileDigests.delete(userId);
+        }
+    }
+
+    @Nullable
+    private static byte[] digestOf(byte[] content) {
+        try {
+            return MessageDigest.getInstance("SHA-256").digest(content);
+        } catch (NoSuchAlgorithmException e) {
+            Slog.w(TAG, "SHA-256 not available", e);
+            return null;
         }
     }
 
@@ -52,6 +52,10 @@ import android.util.Slog;
 import android.view.WindowManagerPolicy;
 import android.view.inputmethod.InputMethodManagerInternal;
 
+import java.io.PrintWriter;
+import java.util.ArrayList;
+import java.util.Objects;
+
 /**
  * Sends broadcasts about important power state changes.
  * <p>
@@ -82,6 +86,7 @@ final class Notifier {
     private static final int MSG_BROADCAST = 2;
     private static final int MSG_WIRELESS_CHARGING_STARTED = 3;
     private static final int MSG_SCREEN_BRIGHTNESS_BOOST_CHANGED = 4;
+    private static final int MSG_FLUSH_WAKE_LOCK_RELEASES = 5;
 
     private final Object mLock = new Object();
 
@@ -127,6 +132,15 @@ final class Notifier {
     // True if a user activity message should be sent.
     private boolean mUserActivityPending;
 
+    // Partial wake lock releases not yet reported to battery stats. A re-acquire of the same wake
+    // lock before they are flushed cancels both, so battery stats sees one span instead of many
+    // short ones. Only used while mWakeLockReleaseCoalesceMs is positive. mSuspendBlocker is held
+    // while any are pending, the flush is a delayed message that must not wait for the device to
+    // wake up again or battery stats would charge the whole suspend to a released wake lock.
+    private final ArrayList<PendingWakeLockRelease> mPendingWakeLockReleases = new ArrayList<>();
+    private long mWakeLockReleaseCoalesceMs;
+    private long mCoalescedWakeLockCount;
+
     public Notifier(Looper looper, Context context, IBatteryStats batteryStats,
             IAppOpsService appOps, SuspendBlocker suspendBlocker,
             WindowManagerPolicy policy) {
@@ -176,6 +190,11 @@ final class Notifier {
 
         final int monitorType = getBatteryStatsWakeLockMonitorType(flags);
         if (monitorType >= 0) {
+            if (cancelPendingWakeLockRelease(monitorType, tag, packageName, ownerUid, ownerPid,
+                    workSource, historyTag)) {
+                // Battery stats still considers the wake lock held.
+                return;
+            }
             try {
                 final boolean unimportantForLogging = ownerUid == Process.SYSTEM_UID
                         && (flags & PowerManager.UNIMPORTANT_FOR_LOGGING) != 0;
@@ -285,23 +304,105 @@ final class Notifier {
         }
 
         final int monitorType = getBatteryStatsWakeLockMonitorType(flags);
-        if (monitorType >= 0) {
-            try {
-                if (workSource != null) {
-                    mBatteryStats.noteStopWakelockFromSource(workSource, ownerPid, tag,
-                            historyTag, monitorType);
-                } else {
-                    mBatteryStats.noteStopWakelock(ownerUid, ownerPid, tag,
-                            historyTag, monitorType);
-                    mAppOps.finishOperation(AppOpsManager.getToken(mAppOps),
-                            AppOpsManager.OP_WAKE_LOCK, ownerUid, packageName);
+        if (monitorType >= 0 && !deferWakeLockRelease(monitorType, tag, packageName, ownerUid,
+                ownerPid, workSource, historyTag)) {
+            noteWakeLockReleased(monitorType, tag, packageName, ownerUid, ownerPid, workSource,
+                    historyTag);
+        }
+    }
+
+    private void noteWakeLockReleased(int monitorType, String tag, String packageName,
+            int ownerUid, int ownerPid, WorkSource workSource, String historyTag) {
+        try {
+            if (workSource != null) {
+                mBatteryStats.noteStopWakelockFromSource(workSource, ownerPid, tag,
+                        historyTag, monitorType);
+            } else {
+                mBatteryStats.noteStopWakelock(ownerUid, ownerPid, tag,
+                        historyTag, monitorType);
+                mAppOps.finishOperation(AppOpsManager.getToken(mAppOps),
+                        AppOpsManager.OP_WAKE_LOCK, ownerUid, packageName);
+            }
+        } catch (RemoteException ex) {
+            // Ignore
+        }
+    }
+
+    /**
+     * Sets how long partial wake lock releases are held back from battery stats waiting for a
+     * re-acquire of the same wake lock. Zero or less reports releases immediately.
+     */
+    public void setWakeLockReleaseCoalesceMs(long coalesceMs) {
+        synchronized (mLock) {
+            mWakeLockReleaseCoalesceMs = coalesceMs;
+            if (coalesceMs <= 0) {
+                flushPendingWakeLockReleasesLocked();
+            }
+        }
+    }
+
+    private boolean deferWakeLockRelease(int monitorType, String tag, String packageName,
+            int ownerUid, int ownerPid, WorkSource workSource, String historyTag) {
+        if (monitorType != BatteryStats.WAKE_TYPE_PARTIAL) {
+            return false;
+        }
+        synchronized (mLock) {
+            if (mWakeLockReleaseCoalesceMs <= 0) {
+                return false;
+            }
+            if (mPendingWakeLockReleases.isEmpty()) {
+                mSuspendBlocker.acquire();
+                mHandler.sendEmptyMessageDelayed(MSG_FLUSH_WAKE_LOCK_RELEASES,
+                        mWakeLockReleaseCoalesceMs);
+            }
+            mPendingWakeLockReleases.add(new PendingWakeLockRelease(monitorType, tag,
+                    packageName, ownerUid, ownerPid, workSource, historyTag));
+            return true;
+        }
+    }
+
+    private boolean cancelPendingWakeLockRelease(int monitorType, String tag, String packageName,
+            int ownerUid, int ownerPid, WorkSource workSource, String historyTag) {
+        synchronized (mLock) {
+            for (int i = mPendingWakeLockReleases.size() - 1; i >= 0; i--) {
+                if (mPendingWakeLockReleases.get(i).matches(monitorType, tag, packageName,
+                        ownerUid, ownerPid, workSource, historyTag)) {
+                    mPendingWakeLockReleases.remove(i);
+                    mCoalescedWakeLockCount++;
+                    if (mPendingWakeLockReleases.isEmpty()) {
+                        mHandler.removeMessages(MSG_FLUSH_WAKE_LOCK_RELEASES);
+                        mSuspendBlocker.release();
+                    }
+                    return true;
                 }
-            } catch (RemoteException ex) {
-                // Ignore
             }
+            return false;
         }
     }
 
+    private void flushPendingWakeLockReleases() {
+        synchronized (mLock) {
+            flushPendingWakeLockReleasesLocked();
+        }
+    }
+
+    // Reports while holding mLock, so that a re-acquire that no longer finds its release pending
+    // is always reported to battery stats after that release.
+    private void flushPendingWakeLockReleasesLocked() {
+        final int count = mPendingWakeLockReleases.size();
+        if (count == 0) {
+            return;
+        }
+        for (int i = 0; i < count; i++) {
+            final PendingWakeLockRelease r = mPendingWakeLockReleases.get(i);
+            noteWakeLockReleased(r.mMonitorType, r.mTag, r.mPackageName, r.mOwnerUid,
+                    r.mOwnerPid, r.mWorkSource, r.mHistoryTag);
+        }
+        mPendingWakeLockReleases.clear();
+        mHandler.removeMessages(MSG_FLUSH_WAKE_LOCK_RELEASES);
+        mSuspendBlocker.release();
+    }
+
     private int getBatteryStatsWakeLockMonitorType(int flags) {
         switch (flags & PowerManager.WAKE_LOCK_LEVEL_MASK) {
             case PowerManager.PARTIAL_WAKE_LOCK:
@@ -710,6 +811,47 @@ final class Notifier {
         mSuspendBlocker.release();
     }
 
+    void dump(PrintWriter pw) {
+        synchronized (mLock) {
+            pw.println("Notifier:");
+            pw.println("  mWakeLockReleaseCoalesceMs=" + mWakeLockReleaseCoalesceMs);
+            pw.println("  mCoalescedWakeLockCount=" + mCoalescedWakeLockCount);
+            pw.println("  mPendingWakeLockReleases=" + mPendingWakeLockReleases.size());
+        }
+    }
+
+    private static final class PendingWakeLockRelease {
+        final int mMonitorType;
+        final String mTag;
+        final String mPackageName;
+        final int mOwnerUid;
+        final int mOwnerPid;
+        final WorkSource mWorkSource;
+        final String mHistoryTag;
+
+        PendingWakeLockRelease(int monitorType, String tag, String packageName, int ownerUid,
+                int ownerPid, WorkSource workSource, String historyTag) {
+            mMonitorType = monitorType;
+            mTag = tag;
+            mPackageName = packageName;
+            mOwnerUid = ownerUid;
+            mOwnerPid = ownerPid;
+            mWorkSource = workSource;
+            mHistoryTag = historyTag;
+        }
+
+        boolean matches(int monitorType, String tag, String packageName, int ownerUid,
+                int ownerPid, WorkSource workSource, String historyTag) {
+            return mMonitorType == monitorType
+                    && mOwnerUid == ownerUid
+                    && mOwnerPid == ownerPid
+                    && Objects.equals(mTag, tag)
+                    && Objects.equals(mPackageName, packageName)
+                    && Objects.equals(mHistoryTag, historyTag)
+                    && Objects.equals(mWorkSource, workSource);
+        }
+    }
+
     private final class NotifierHandler extends Handler {
         public NotifierHandler(Looper looper) {
             super(looper, null, true /*async*/);
@@ -732,6 +874,9 @@ final class Notifier {
                 case MSG_SCREEN_BRIGHTNESS_BOOST_CHANGED:
                     sendBrightnessBoostChangedBroadcast();
                     break;
+                case MSG_FLUSH_WAKE_LOCK_RELEASES:
+                    flushPendingWakeLockReleases();
+                    break;
             }
         }
     }
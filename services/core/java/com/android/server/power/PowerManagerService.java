@@ -68,6 +68,7 @@ import android.service.power.WakeLockProto;
 import android.service.vr.IVrManager;
 import android.service.vr.IVrStateCallbacks;
 import android.telephony.TelephonyManager;
+import android.util.ArrayMap;
 import android.util.EventLog;
 import android.util.KeyValueListParser;
 import android.util.Log;
@@ -280,9 +281,19 @@ public final class PowerManagerService extends SystemService
     // Table of all wake locks acquired by applications.
     protected final ArrayList<WakeLock> mWakeLocks = new ArrayList<WakeLock>();
 
+    // Index of mWakeLocks by the client's binder token.
+    private final ArrayMap<IBinder, WakeLock> mWakeLocksByBinder = new ArrayMap<>();
+
     // A bitfield that summarizes the state of all active wakelocks.
     private int mWakeLockSummary;
 
+    // The wake lock levels of all active wake locks, before the current wakefulness is taken
+    // into account. Only recomputed when DIRTY_WAKE_LOCKS is set.
+    private int mWakeLockLevelSummary;
+
+    // How long released wake locks were held, by level.
+    private final WakeLockHoldStats mWakeLockHoldStats = new WakeLockHoldStats();
+
     // Have we scheduled a message to check for long wake locks?  This is when we will check.
     private long mNotifyLongScheduled;
 
@@ -607,12 +618,20 @@ public final class PowerManagerService extends SystemService
     private final class Constants extends ContentObserver {
         // Key names stored in the settings value.
         private static final String KEY_NO_CACHED_WAKE_LOCKS = "no_cached_wake_locks";
+        private static final String KEY_WAKE_LOCK_RELEASE_COALESCE_MS =
+                "wake_lock_release_coalesce_ms";
 
         private static final boolean DEFAULT_NO_CACHED_WAKE_LOCKS = true;
+        private static final long DEFAULT_WAKE_LOCK_RELEASE_COALESCE_MS = 0;
 
         // Prevent processes that are cached from holding wake locks?
         public boolean NO_CACHED_WAKE_LOCKS = DEFAULT_NO_CACHED_WAKE_LOCKS;
 
+        // How long to hold back partial wake lock releases from battery stats, so that a quick
+        // re-acquire of the same wake lock is recorded as one span. Trades the accuracy of short
+        // wake lock spans for a smaller battery history, 0 reports every release right away.
+        public long WAKE_LOCK_RELEASE_COALESCE_MS = DEFAULT_WAKE_LOCK_RELEASE_COALESCE_MS;
+
         private ContentResolver mResolver;
         private final KeyValueListParser mParser = new KeyValueListParser(',');
 
@@ -645,6 +664,10 @@ public final class PowerManagerService extends SystemService
 
                 NO_CACHED_WAKE_LOCKS = mParser.getBoolean(KEY_NO_CACHED_WAKE_LOCKS,
                         DEFAULT_NO_CACHED_WAKE_LOCKS);
+                WAKE_LOCK_RELEASE_COALESCE_MS = mParser.getLong(
+                        KEY_WAKE_LOCK_RELEASE_COALESCE_MS,
+                        DEFAULT_WAKE_LOCK_RELEASE_COALESCE_MS);
+                mNotifier.setWakeLockReleaseCoalesceMs(WAKE_LOCK_RELEASE_COALESCE_MS);
             }
         }
 
@@ -653,6 +676,8 @@ public final class PowerManagerService extends SystemService
 
             pw.print("    "); pw.print(KEY_NO_CACHED_WAKE_LOCKS); pw.print("=");
             pw.println(NO_CACHED_WAKE_LOCKS);
+            pw.print("    "); pw.print(KEY_WAKE_LOCK_RELEASE_COALESCE_MS); pw.print("=");
+            pw.println(WAKE_LOCK_RELEASE_COALESCE_MS);
         }
 
         void dumpProto(ProtoOutputStream proto) {
@@ -1140,11 +1165,9 @@ public final class PowerManagerService extends SystemService
                         + ", tag=\"" + tag + "\", ws=" + ws + ", uid=" + uid + ", pid=" + pid);
             }
 
-            WakeLock wakeLock;
-            int index = findWakeLockIndexLocked(lock);
+            WakeLock wakeLock = mWakeLocksByBinder.get(lock);
             boolean notifyAcquire;
-            if (index >= 0) {
-                wakeLock = mWakeLocks.get(index);
+            if (wakeLock != null) {
                 if (!wakeLock.hasSameProperties(flags, tag, ws, uid, pid)) {
                     // Update existing wake lock.  This shouldn't happen but is harmless.
                     notifyWakeLockChangingLocked(wakeLock, flags, tag, packageName,
@@ -1168,6 +1191,7 @@ public final class PowerManagerService extends SystemService
                     throw new IllegalArgumentException("Wake lock is already dead.");
                 }
                 mWakeLocks.add(wakeLock);
+                mWakeLocksByBinder.put(lock, wakeLock);
                 setWakeLockDisabledStateLocked(wakeLock);
                 qcNsrmPowExt.checkPmsBlockedWakelocks(uid, pid, flags, tag, wakeLock);
                 notifyAcquire = true;
@@ -1218,8 +1242,8 @@ public final class PowerManagerService extends SystemService
 
     private void releaseWakeLockInternal(IBinder lock, int flags) {
         synchronized (mLock) {
-            int index = findWakeLockIndexLocked(lock);
-            if (index < 0) {
+            final WakeLock wakeLock = mWakeLocksByBinder.get(lock);
+            if (wakeLock == null) {
                 if (DEBUG_SPEW) {
                     Slog.d(TAG, "releaseWakeLockInternal: lock=" + Objects.hashCode(lock)
                             + " [not found], flags=0x" + Integer.toHexString(flags));
@@ -1227,7 +1251,6 @@ public final class PowerManagerService extends SystemService
                 return;
             }
 
-            WakeLock wakeLock = mWakeLocks.get(index);
             if (DEBUG_SPEW) {
                 Slog.d(TAG, "releaseWakeLockInternal: lock=" + Objects.hashCode(lock)
                         + " [" + wakeLock.mTag + "], flags=0x" + Integer.toHexString(flags));
@@ -1238,7 +1261,7 @@ public final class PowerManagerService extends SystemService
             }
 
             wakeLock.mLock.unlinkToDeath(wakeLock, 0);
-            removeWakeLockLocked(wakeLock, index);
+            removeWakeLockLocked(wakeLock);
         }
     }
 
@@ -1249,17 +1272,21 @@ public final class PowerManagerService extends SystemService
                         + " [" + wakeLock.mTag + "]");
             }
 
-            int index = mWakeLocks.indexOf(wakeLock);
-            if (index < 0) {
+            if (mWakeLocksByBinder.get(wakeLock.mLock) != wakeLock) {
                 return;
             }
 
-            removeWakeLockLocked(wakeLock, index);
+            removeWakeLockLocked(wakeLock);
         }
     }
 
-    private void removeWakeLockLocked(WakeLock wakeLock, int index) {
-        mWakeLocks.remove(index);
+    private void removeWakeLockLocked(WakeLock wakeLock) {
+        mWakeLocks.remove(wakeLock);
+        mWakeLocksByBinder.remove(wakeLock.mLock);
+        if (wakeLock.mNotifiedAcquired) {
+            mWakeLockHoldStats.record(wakeLock.mFlags & PowerManager.WAKE_LOCK_LEVEL_MASK,
+                    SystemClock.uptimeMillis() - wakeLock.mAcquireTime);
+        }
         UidState state = wakeLock.mUidState;
         state.mNumWakeLocks--;
         if (state.mNumWakeLocks <= 0 &&
@@ -1286,8 +1313,8 @@ public final class PowerManagerService extends SystemService
     private void updateWakeLockWorkSourceInternal(IBinder lock, WorkSource ws, String historyTag,
             int callingUid) {
         synchronized (mLock) {
-            int index = findWakeLockIndexLocked(lock);
-            if (index < 0) {
+            final WakeLock wakeLock = mWakeLocksByBinder.get(lock);
+            if (wakeLock == null) {
                 if (DEBUG_SPEW) {
                     Slog.d(TAG, "updateWakeLockWorkSourceInternal: lock=" + Objects.hashCode(lock)
                             + " [not found], ws=" + ws);
@@ -1296,7 +1323,6 @@ public final class PowerManagerService extends SystemService
                         + " from uid " + callingUid);
             }
 
-            WakeLock wakeLock = mWakeLocks.get(index);
             if (DEBUG_SPEW) {
                 Slog.d(TAG, "updateWakeLockWorkSourceInternal: lock=" + Objects.hashCode(lock)
                         + " [" + wakeLock.mTag + "], ws=" + ws);
@@ -1312,16 +1338,6 @@ public final class PowerManagerService extends SystemService
         }
     }
 
-    private int findWakeLockIndexLocked(IBinder lock) {
-        final int count = mWakeLocks.size();
-        for (int i = 0; i < count; i++) {
-            if (mWakeLocks.get(i).mLock == lock) {
-                return i;
-            }
-        }
-        return -1;
-    }
-
     protected void notifyWakeLockAcquiredLocked(WakeLock wakeLock) {
         if (mSystemReady && !wakeLock.mDisabled) {
             wakeLock.mNotifiedAcquired = true;
@@ -1950,8 +1966,8 @@ public final class PowerManagerService extends SystemService
      */
     @SuppressWarnings("deprecation")
     private void updateWakeLockSummaryLocked(int dirty) {
-        if ((dirty & (DIRTY_WAKE_LOCKS | DIRTY_WAKEFULNESS)) != 0) {
-            mWakeLockSummary = 0;
+        if ((dirty & DIRTY_WAKE_LOCKS) != 0) {
+            mWakeLockLevelSummary = 0;
 
             final int numWakeLocks = mWakeLocks.size();
             for (int i = 0; i < numWakeLocks; i++) {
@@ -1960,29 +1976,34 @@ public final class PowerManagerService extends SystemService
                     case PowerManager.PARTIAL_WAKE_LOCK:
                         if (!wakeLock.mDisabled) {
                             // We only respect this if the wake lock is not disabled.
-                            mWakeLockSummary |= WAKE_LOCK_CPU;
+                            mWakeLockLevelSummary |= WAKE_LOCK_CPU;
                         }
                         break;
                     case PowerManager.FULL_WAKE_LOCK:
-                        mWakeLockSummary |= WAKE_LOCK_SCREEN_BRIGHT | WAKE_LOCK_BUTTON_BRIGHT;
+                        mWakeLockLevelSummary |= WAKE_LOCK_SCREEN_BRIGHT | WAKE_LOCK_BUTTON_BRIGHT;
                         break;
                     case PowerManager.SCREEN_BRIGHT_WAKE_LOCK:
-                        mWakeLockSummary |= WAKE_LOCK_SCREEN_BRIGHT;
+                        mWakeLockLevelSummary |= WAKE_LOCK_SCREEN_BRIGHT;
                         break;
                     case PowerManager.SCREEN_DIM_WAKE_LOCK:
-                        mWakeLockSummary |= WAKE_LOCK_SCREEN_DIM;
+                        mWakeLockLevelSummary |= WAKE_LOCK_SCREEN_DIM;
                         break;
                     case PowerManager.PROXIMITY_SCREEN_OFF_WAKE_LOCK:
-                        mWakeLockSummary |= WAKE_LOCK_PROXIMITY_SCREEN_OFF;
+                        mWakeLockLevelSummary |= WAKE_LOCK_PROXIMITY_SCREEN_OFF;
                         break;
                     case PowerManager.DOZE_WAKE_LOCK:
-                        mWakeLockSummary |= WAKE_LOCK_DOZE;
+                        mWakeLockLevelSummary |= WAKE_LOCK_DOZE;
                         break;
                     case PowerManager.DRAW_WAKE_LOCK:
-                        mWakeLockSummary |= WAKE_LOCK_DRAW;
+                        mWakeLockLevelSummary |= WAKE_LOCK_DRAW;
                         break;
                 }
             }
+        }
+
+        if ((dirty & (DIRTY_WAKE_LOCKS | DIRTY_WAKEFULNESS)) != 0) {
+            // Wakefulness changes don't change the set of wake locks, only how they apply.
+            mWakeLockSummary = mWakeLockLevelSummary;
 
             // Cancel wake locks that make no sense based on the current state.
             if (mWakefulness != WAKEFULNESS_DOZING) {
@@ -3533,6 +3554,14 @@ public final class PowerManagerService extends SystemService
                 pw.println("  " + wl);
             }
 
+            pw.println();
+            mWakeLockHoldStats.dump(pw);
+
+            if (mNotifier != null) {
+                pw.println();
+                mNotifier.dump(pw);
+            }
+
             pw.println();
             pw.println("Suspend Blockers: size=" + mSuspendBlockers.size());
             for (SuspendBlocker sb : mSuspendBlockers) {
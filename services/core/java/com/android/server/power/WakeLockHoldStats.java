@@ -0,0 +1,106 @@
+/*
+ * Copyright (C) 2017 The Android Open Source Project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.android.server.power;
+
+import android.os.PowerManager;
+import android.util.SparseArray;
+
+import java.io.PrintWriter;
+
+/**
+ * Per wake lock level histograms of how long released wake locks were held.
+ *
+ * <p>Not thread safe, {@link PowerManagerService} records and dumps while holding its lock.</p>
+ */
+final class WakeLockHoldStats {
+    // Bucket i counts hold times in [4^(i-1), 4^i) ms, bucket 0 counts hold times below 1ms and
+    // the last bucket everything from 4^(BUCKET_COUNT-2) ms on.
+    private static final int BUCKET_COUNT = 12;
+
+    private static final class Entry {
+        final int[] buckets = new int[BUCKET_COUNT];
+        long count;
+        long totalMs;
+        long maxMs;
+    }
+
+    private final SparseArray<Entry> mEntries = new SparseArray<>();
+
+    /**
+     * Records one released wake lock.
+     *
+     * @param level The wake lock level, as masked by {@link PowerManager#WAKE_LOCK_LEVEL_MASK}.
+     * @param heldMs How long the wake lock was held.
+     */
+    void record(int level, long heldMs) {
+        Entry entry = mEntries.get(level);
+        if (entry == null) {
+            entry = new Entry();
+            mEntries.put(level, entry);
+        }
+        entry.count++;
+        entry.buckets[bucketOf(heldMs)]++;
+        entry.totalMs += heldMs;
+        entry.maxMs = Math.max(entry.maxMs, heldMs);
+    }
+
+    private static int bucketOf(long ms) {
+        if (ms <= 0) {
+            return 0;
+        }
+        // Two bits per bucket.
+        final int bucket = (64 - Long.numberOfLeadingZeros(ms) + 1) / 2;
+        return Math.min(bucket, BUCKET_COUNT - 1);
+    }
+
+    void dump(PrintWriter pw) {
+        pw.println("Wake Lock Hold Times (ms, buckets <1,<4,<16,..,>="
+                + (1L << (2 * (BUCKET_COUNT - 2))) + "):");
+        if (mEntries.size() == 0) {
+            pw.println("  <none>");
+            return;
+        }
+        for (int i = 0; i < mEntries.size(); i++) {
+            final Entry entry = mEntries.valueAt(i);
+            pw.print("  "); pw.print(levelToString(mEntries.keyAt(i)));
+            pw.print(": count="); pw.print(entry.count);
+            pw.print(" avg="); pw.print(entry.totalMs / entry.count);
+            pw.print(" max="); pw.print(entry.maxMs);
+            pw.print(" [");
+            for (int b = 0; b < BUCKET_COUNT; b++) {
+                if (b > 0) pw.print(',');
+                pw.print(entry.buckets[b]);
+            }
+            pw.println("]");
+        }
+    }
+
+    @SuppressWarnings("deprecation")
+    private static String levelToString(int level) {
+        switch (level) {
+            case PowerManager.PARTIAL_WAKE_LOCK: return "PARTIAL_WAKE_LOCK";
+            case PowerManager.FULL_WAKE_LOCK: return "FULL_WAKE_LOCK";
+            case PowerManager.SCREEN_BRIGHT_WAKE_LOCK: return "SCREEN_BRIGHT_WAKE_LOCK";
+            case PowerManager.SCREEN_DIM_WAKE_LOCK: return "SCREEN_DIM_WAKE_LOCK";
+            case PowerManager.PROXIMITY_SCREEN_OFF_WAKE_LOCK:
+                return "PROXIMITY_SCREEN_OFF_WAKE_LOCK";
+            case PowerManager.DOZE_WAKE_LOCK: return "DOZE_WAKE_LOCK";
+            case PowerManager.DRAW_WAKE_LOCK: return "DRAW_WAKE_LOCK";
+            default: return "0x" + Integer.toHexString(level);
+        }
+    }
+}
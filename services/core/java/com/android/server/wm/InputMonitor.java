@@ -34,6 +34,7 @@ import static com.android.server.wm.WindowManagerDebugConfig.TAG_WM;
 
 import android.app.ActivityManager;
 import android.graphics.Rect;
+import android.graphics.Region;
 import android.os.Debug;
 import android.os.Looper;
 import android.os.RemoteException;
@@ -52,7 +53,9 @@ import com.android.server.input.InputManagerService;
 import com.android.server.input.InputWindowHandle;
 
 import java.io.PrintWriter;
+import java.util.ArrayList;
 import java.util.Arrays;
+import java.util.Objects;
 import java.util.Set;
 import java.util.function.Consumer;
 
@@ -81,6 +84,18 @@ final class InputMonitor implements InputManagerService.WindowManagerCallbacks {
     private int mInputWindowHandleCount;
     private InputWindowHandle mFocusedInputWindowHandle;
 
+    // Copies of the window handles last sent to the input dispatcher. Handles are reused and
+    // updated in place, so their values have to be copied to detect changes.
+    private final ArrayList<SentInputWindow> mSentInputWindows = new ArrayList<>();
+    private int mSentInputWindowCount;
+    private InputWindowHandle mSentFocusedInputWindowHandle;
+
+    // Number of window list rebuilds, how many of them were sent to the input dispatcher, and
+    // the total time spent rebuilding and sending.
+    private long mInputWindowsRebuildCount;
+    private long mInputWindowsSentCount;
+    private long mInputWindowsRebuildNanos;
+
     private boolean mAddInputConsumerHandle;
     private boolean mAddPipInputConsumerHandle;
     private boolean mAddWallpaperInputConsumerHandle;
@@ -358,6 +373,7 @@ final class InputMonitor implements InputManagerService.WindowManagerCallbacks {
             return;
         }
         mUpdateInputWindowsNeeded = false;
+        final long startNanos = System.nanoTime();
 
         if (false) Slog.d(TAG_WM, ">>>>>> ENTERED updateInputWindowsLw");
 
@@ -399,9 +415,41 @@ final class InputMonitor implements InputManagerService.WindowManagerCallbacks {
         // Add all windows on the default display.
         mUpdateInputForAllWindowsConsumer.updateInputWindows(inDrag);
 
+        mInputWindowsRebuildCount++;
+        mInputWindowsRebuildNanos += System.nanoTime() - startNanos;
+
         if (false) Slog.d(TAG_WM, "<<<<<<< EXITED updateInputWindowsLw");
     }
 
+    /**
+     * Compares the window handles about to be sent with the ones sent last time, and remembers
+     * the new ones.
+     *
+     * @return true if the input dispatcher needs to be told about the new window handles.
+     */
+    private boolean updateSentInputWindowsLw() {
+        boolean changed = mInputWindowHandleCount != mSentInputWindowCount
+                || mFocusedInputWindowHandle != mSentFocusedInputWindowHandle;
+        for (int i = 0; i < mInputWindowHandleCount; i++) {
+            if (i == mSentInputWindows.size()) {
+                mSentInputWindows.add(new SentInputWindow());
+            }
+            final SentInputWindow sent = mSentInputWindows.get(i);
+            final InputWindowHandle handle = mInputWindowHandles[i];
+            if (!sent.matches(handle)) {
+                sent.set(handle);
+                changed = true;
+            }
+        }
+        // Don't keep removed windows reachable.
+        for (int i = mInputWindowHandleCount; i < mSentInputWindowCount; i++) {
+            mSentInputWindows.get(i).handle = null;
+        }
+        mSentInputWindowCount = mInputWindowHandleCount;
+        mSentFocusedInputWindowHandle = mFocusedInputWindowHandle;
+        return changed;
+    }
+
     /* Notifies that the input device configuration has changed. */
     @Override
     public void notifyConfigurationChanged() {
@@ -589,6 +637,11 @@ final class InputMonitor implements InputManagerService.WindowManagerCallbacks {
         if (mInputFreezeReason != null) {
             pw.println(prefix + "mInputFreezeReason=" + mInputFreezeReason);
         }
+        pw.print(prefix); pw.print("Input windows: rebuilds="); pw.print(mInputWindowsRebuildCount);
+        pw.print(" sent="); pw.print(mInputWindowsSentCount);
+        pw.print(" avgRebuildUs=");
+        pw.println(mInputWindowsRebuildCount == 0 ? 0
+                : mInputWindowsRebuildNanos / mInputWindowsRebuildCount / 1000);
         final Set<String> inputConsumerKeys = mInputConsumers.keySet();
         if (!inputConsumerKeys.isEmpty()) {
             pw.println(prefix + "InputConsumers:");
@@ -628,8 +681,12 @@ final class InputMonitor implements InputManagerService.WindowManagerCallbacks {
                 addInputWindowHandle(wallpaperInputConsumer.mWindowHandle);
             }
 
-            // Send windows to native code.
-            mService.mInputManager.setInputWindows(mInputWindowHandles, mFocusedInputWindowHandle);
+            // Send windows to native code, unless it already has exactly these windows.
+            if (updateSentInputWindowsLw()) {
+                mService.mInputManager.setInputWindows(mInputWindowHandles,
+                        mFocusedInputWindowHandle);
+                mInputWindowsSentCount++;
+            }
 
             clearInputWindowHandlesLw();
         }
@@ -697,4 +754,88 @@ final class InputMonitor implements InputManagerService.WindowManagerCallbacks {
                     inputWindowHandle, w, flags, type, isVisible, hasFocus, hasWallpaper);
         }
     }
+
+    /**
+     * The values of an {@link InputWindowHandle} as last sent to the input dispatcher.
+     */
+    private static final class SentInputWindow {
+        InputWindowHandle handle;
+        InputChannel inputChannel;
+        String name;
+        String applicationName;
+        long applicationDispatchingTimeoutNanos;
+        int layoutParamsFlags;
+        int layoutParamsType;
+        long dispatchingTimeoutNanos;
+        int frameLeft;
+        int frameTop;
+        int frameRight;
+        int frameBottom;
+        float scaleFactor;
+        final Region touchableRegion = new Region();
+        boolean visible;
+        boolean canReceiveKeys;
+        boolean hasFocus;
+        boolean hasWallpaper;
+        boolean paused;
+        int layer;
+        int ownerPid;
+        int ownerUid;
+        int inputFeatures;
+
+        boolean matches(InputWindowHandle h) {
+            final InputApplicationHandle app = h.inputApplicationHandle;
+            return handle == h
+                    && inputChannel == h.inputChannel
+                    && (app == null || (applicationDispatchingTimeoutNanos
+                            == app.dispatchingTimeoutNanos
+                            && Objects.equals(applicationName, app.name)))
+                    && layoutParamsFlags == h.layoutParamsFlags
+                    && layoutParamsType == h.layoutParamsType
+                    && dispatchingTimeoutNanos == h.dispatchingTimeoutNanos
+                    && frameLeft == h.frameLeft
+                    && frameTop == h.frameTop
+                    && frameRight == h.frameRight
+                    && frameBottom == h.frameBottom
+                    && scaleFactor == h.scaleFactor
+                    && visible == h.visible
+                    && canReceiveKeys == h.canReceiveKeys
+                    && hasFocus == h.hasFocus
+                    && hasWallpaper == h.hasWallpaper
+                    && paused == h.paused
+                    && layer == h.layer
+                    && ownerPid == h.ownerPid
+                    && ownerUid == h.ownerUid
+                    && inputFeatures == h.inputFeatures
+                    && Objects.equals(name, h.name)
+                    && touchableRegion.equals(h.touchableRegion);
+        }
+
+        void set(InputWindowHandle h) {
+            final InputApplicationHandle app = h.inputApplicationHandle;
+            handle = h;
+            inputChannel = h.inputChannel;
+            applicationName = app != null ? app.name : null;
+            applicationDispatchingTimeoutNanos = app != null ? app.dispatchingTimeoutNanos : 0;
+            name = h.name;
+            layoutParamsFlags = h.layoutParamsFlags;
+            layoutParamsType = h.layoutParamsType;
+            dispatchingTimeoutNanos = h.dispatchingTimeoutNanos;
+            frameLeft = h.frameLeft;
+            frameTop = h.frameTop;
+            frameRight = h.frameRight;
+            frameBottom = h.frameBottom;
+            scaleFactor = h.scaleFactor;
+            touchableRegion.set(h.touchableRegion);
+            visible = h.visible;
+            canReceiveKeys = h.canReceiveKeys;
+            hasFocus = h.hasFocus;
+            hasWallpaper = h.hasWallpaper;
+            paused = h.paused;
+            layer = h.layer;
+            ownerPid = h.ownerPid;
+            ownerUid = h.ownerUid;
+            inputFeatures = h.inputFeatures;
+        }
+    }
 }
@@ -21,6 +21,9 @@ import static android.net.ConnectivityManager.TYPE_WIFI;
 import static android.net.NetworkPolicy.LIMIT_DISABLED;
 import static android.net.NetworkPolicy.SNOOZE_NEVER;
 import static android.net.NetworkPolicy.WARNING_DISABLED;
+import static android.net.NetworkPolicyManager.FIREWALL_CHAIN_DOZABLE;
+import static android.net.NetworkPolicyManager.FIREWALL_RULE_ALLOW;
+import static android.net.NetworkPolicyManager.FIREWALL_RULE_DEFAULT;
 import static android.net.NetworkPolicyManager.POLICY_ALLOW_METERED_BACKGROUND;
 import static android.net.NetworkPolicyManager.POLICY_NONE;
 import static android.net.NetworkPolicyManager.POLICY_REJECT_METERED_BACKGROUND;
@@ -59,10 +62,14 @@ import static org.mockito.ArgumentMatchers.isA;
 import static org.mockito.ArgumentMatchers.isNull;
 import static org.mockito.Mockito.atLeast;
 import static org.mockito.Mockito.atLeastOnce;
+import static org.mockito.Mockito.clearInvocations;
 import static org.mockito.Mockito.doAnswer;
+import static org.mockito.Mockito.doNothing;
 import static org.mockito.Mockito.doReturn;
+import static org.mockito.Mockito.doThrow;
 import static org.mockito.Mockito.mock;
 import static org.mockito.Mockito.never;
+import static org.mockito.Mockito.times;
 import static org.mockito.Mockito.verify;
 import static org.mockito.Mockito.when;
 
@@ -112,6 +119,7 @@ import android.text.format.Time;
 import android.util.Log;
 import android.util.Pair;
 import android.util.RecurrenceRule;
+import android.util.SparseIntArray;
 import android.util.TrustedTime;
 
 import com.android.internal.telephony.PhoneConstants;
@@ -438,6 +446,66 @@ public class NetworkPolicyManagerServiceTest {
         addRestrictBackgroundWhitelist(false);
     }
 
+    private static SparseIntArray firewallRules(int... uidsAndRules) {
+        final SparseIntArray rules = new SparseIntArray();
+        for (int i = 0; i < uidsAndRules.length; i += 2) {
+            rules.put(uidsAndRules[i], uidsAndRules[i + 1]);
+        }
+        return rules;
+    }
+
+    private void setDozableFirewallRules(SparseIntArray rules) {
+        synchronized (mService.mUidRulesFirstLock) {
+            mService.setUidFirewallRulesUL(FIREWALL_CHAIN_DOZABLE, rules);
+        }
+    }
+
+    @Test
+    public void testUnchangedFirewallRulesAreNotPushed() throws Exception {
+        clearInvocations(mNetworkManager);
+        setDozableFirewallRules(firewallRules(UID_A, FIREWALL_RULE_ALLOW,
+                UID_B, FIREWALL_RULE_ALLOW));
+        setDozableFirewallRules(firewallRules(UID_A, FIREWALL_RULE_ALLOW,
+                UID_B, FIREWALL_RULE_ALLOW));
+        verify(mNetworkManager, times(1)).setFirewallUidRules(eq(FIREWALL_CHAIN_DOZABLE),
+                any(int[].class), any(int[].class));
+
+        // Any difference is pushed.
+        setDozableFirewallRules(firewallRules(UID_A, FIREWALL_RULE_ALLOW));
+        verify(mNetworkManager, times(2)).setFirewallUidRules(eq(FIREWALL_CHAIN_DOZABLE),
+                any(int[].class), any(int[].class));
+    }
+
+    @Test
+    public void testDefaultFirewallRulesEqualMissingRules() throws Exception {
+        clearInvocations(mNetworkManager);
+        setDozableFirewallRules(firewallRules(UID_A, FIREWALL_RULE_ALLOW));
+        setDozableFirewallRules(firewallRules(UID_A, FIREWALL_RULE_ALLOW,
+                UID_B, FIREWALL_RULE_DEFAULT));
+        setDozableFirewallRules(firewallRules(UID_A, FIREWALL_RULE_ALLOW));
+        verify(mNetworkManager, times(1)).setFirewallUidRules(eq(FIREWALL_CHAIN_DOZABLE),
+                any(int[].class), any(int[].class));
+    }
+
+    @Test
+    public void testFailedFirewallRulesPushIsRetried() throws Exception {
+        clearInvocations(mNetworkManager);
+        doThrow(new RemoteException()).when(mNetworkManager).setFirewallUidRules(
+                eq(FIREWALL_CHAIN_DOZABLE), any(int[].class), any(int[].class));
+        setDozableFirewallRules(firewallRules(UID_A, FIREWALL_RULE_ALLOW));
+
+        doNothing().when(mNetworkManager).setFirewallUidRules(
+                eq(FIREWALL_CHAIN_DOZABLE), any(int[].class), any(int[].class));
+        setDozableFirewallRules(firewallRules(UID_A, FIREWALL_RULE_ALLOW));
+        verify(mNetworkManager, times(2)).setFirewallUidRules(eq(FIREWALL_CHAIN_DOZABLE),
+                any(int[].class), any(int[].class));
+
+        // Once netd took them, the same rules are not pushed again.
+        setDozableFirewallRules(firewallRules(UID_A, FIREWALL_RULE_ALLOW));
+        verify(mNetworkManager, times(2)).setFirewallUidRules(eq(FIREWALL_CHAIN_DOZABLE),
+                any(int[].class), any(int[].class));
+    }
+
     private void addRestrictBackgroundWhitelist(boolean expectIntent) throws Exception {
         // Sanity checks.
         assertWhitelistUids();
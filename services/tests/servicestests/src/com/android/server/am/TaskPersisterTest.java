@@ -21,12 +21,16 @@ import android.os.Environment;
 import android.os.UserHandle;
 import android.os.UserManager;
 import android.test.AndroidTestCase;
+import android.os.FileUtils;
+import android.util.ArraySet;
 import android.util.Log;
 import android.util.SparseBooleanArray;
 
 import com.android.server.am.TaskPersister;
 
 import java.io.File;
+import java.io.FileWriter;
+import java.io.IOException;
 import java.util.Random;
 
 public class TaskPersisterTest extends AndroidTestCase {
@@ -69,6 +73,102 @@ public class TaskPersisterTest extends AndroidTestCase {
                 taskIdsOnFile.equals(newTaskIdsOnFile));
     }
 
+    public void testObsoleteFilesCheckIsQueuedOnce() {
+        mTaskPersister.wakeup(null, false);
+        mTaskPersister.wakeup(null, false);
+        mTaskPersister.wakeup(null, false);
+        assertEquals(1, mTaskPersister.mWriteQueue.size());
+    }
+
+    public void testFindTasksToSkipKeepsMostRecentlyMovedAndAffiliates() throws IOException {
+        final File dir = createTasksDir();
+        try {
+            // Tasks 6, 5 and 4 moved last. Task 5 is affiliated with 2, which is affiliated
+            // with 1, so the whole chain must be restored.
+            writeTaskFile(dir, 1, 10, -1, 2);
+            writeTaskFile(dir, 2, 20, 1, 5);
+            writeTaskFile(dir, 3, 30, -1, -1);
+            writeTaskFile(dir, 4, 40, -1, -1);
+            writeTaskFile(dir, 5, 50, 2, -1);
+            writeTaskFile(dir, 6, 60, -1, -1);
+            // Preadded tasks don't count towards the limit.
+            writeTaskFile(dir, 7, 70, -1, -1);
+            // Unreadable files are left to the full restore.
+            writeFile(new File(dir, "8_task.xml"), "not xml");
+            final SparseBooleanArray preaddedTasks = new SparseBooleanArray();
+            preaddedTasks.put(7, true);
+
+            final SparseBooleanArray skipped =
+                    TaskPersister.findTasksToSkip(dir.listFiles(), 3, preaddedTasks);
+
+            assertEquals(1, skipped.size());
+            assertTrue(skipped.get(3));
+        } finally {
+            FileUtils.deleteContentsAndDir(dir);
+        }
+    }
+
+    public void testFindTasksToSkipWithinLimit() throws IOException {
+        final File dir = createTasksDir();
+        try {
+            writeTaskFile(dir, 1, 10, -1, -1);
+            writeTaskFile(dir, 2, 20, -1, -1);
+
+            assertEquals(0, TaskPersister.findTasksToSkip(dir.listFiles(), 2,
+                    new SparseBooleanArray()).size());
+        } finally {
+            FileUtils.deleteContentsAndDir(dir);
+        }
+    }
+
+    public void testSkippedTaskFilesAreNotDeleted() throws IOException {
+        final File dir = createTasksDir();
+        try {
+            writeTaskFile(dir, 1, 10, -1, -1);
+            writeTaskFile(dir, 2, 20, -1, -1);
+            writeTaskFile(dir, 3, 30, -1, -1);
+
+            // Restore adds both the restored and the skipped tasks to the recovered ids.
+            final SparseBooleanArray skipped =
+                    TaskPersister.findTasksToSkip(dir.listFiles(), 1, new SparseBooleanArray());
+            assertEquals(2, skipped.size());
+            final ArraySet<Integer> recoveredTaskIds = new ArraySet<>();
+            recoveredTaskIds.add(3);
+            for (int i = 0; i < skipped.size(); i++) {
+                recoveredTaskIds.add(skipped.keyAt(i));
+            }
+            TaskPersister.removeObsoleteFiles(recoveredTaskIds, dir.listFiles());
+
+            assertTrue(new File(dir, "1_task.xml").exists());
+            assertTrue(new File(dir, "2_task.xml").exists());
+            assertTrue(new File(dir, "3_task.xml").exists());
+        } finally {
+            FileUtils.deleteContentsAndDir(dir);
+        }
+    }
+
+    private File createTasksDir() {
+        final File dir = new File(getContext().getCacheDir(), "TaskPersisterTest");
+        FileUtils.deleteContentsAndDir(dir);
+        assertTrue(dir.mkdirs());
+        return dir;
+    }
+
+    private static void writeTaskFile(File dir, int taskId, long lastTimeMoved,
+            int prevAffiliation, int nextAffiliation) throws IOException {
+        writeFile(new File(dir, taskId + "_task.xml"),
+                "<?xml version='1.0' encoding='utf-8' standalone='yes' ?>\n"
+                + "<task task_id=\"" + taskId + "\" last_time_moved=\"" + lastTimeMoved
+                + "\" prev_affiliation=\"" + prevAffiliation
+                + "\" next_affiliation=\"" + nextAffiliation + "\" />\n");
+    }
+
+    private static void writeFile(File file, String contents) throws IOException {
+        try (FileWriter writer = new FileWriter(file)) {
+            writer.write(contents);
+        }
+    }
+
     private int createUser(String name, int flags) {
         UserInfo user = mUserManager.createUser(name, flags);
         if (user == null) {
@@ -16,11 +16,14 @@
 
 package com.android.server.content;
 
+import android.accounts.Account;
 import android.os.Bundle;
 import android.test.suitebuilder.annotation.SmallTest;
 
 import junit.framework.TestCase;
 
+import java.util.Arrays;
+
 /**
  * Tests for SyncManager.
  *
@@ -115,6 +118,38 @@ public class SyncManagerTest extends TestCase {
         assertEquals("-1m01s", SyncManager.formatDurationHMS(sb, -61000L).toString());
     }
 
+    private static SyncOperation newSyncOperation(String authority, long expectedRuntime) {
+        final SyncOperation op = new SyncOperation(new Account("account1", "type1"), 0,
+                1, "foo", SyncOperation.REASON_PERIODIC, SyncStorageEngine.SOURCE_USER,
+                authority, new Bundle(), false);
+        op.expectedRuntime = expectedRuntime;
+        return op;
+    }
+
+    public void testFindSyncToBatchWith() {
+        final SyncOperation op = newSyncOperation("authority1", 1000);
+        final SyncOperation later = newSyncOperation("authority2", 31000);
+        final SyncOperation tooLate = newSyncOperation("authority3", 1000000);
+        final SyncOperation earlier = newSyncOperation("authority4", 500);
+
+        assertSame(later, SyncManager.findSyncToBatchWith(op,
+                Arrays.asList(tooLate, earlier, later)));
+        assertNull(SyncManager.findSyncToBatchWith(op, Arrays.asList(tooLate, earlier)));
+    }
+
+    public void testFindSyncToBatchWith_ignoresSameKey() {
+        // A re-scheduled sync must not be pushed back to a duplicate of itself, which
+        // scheduleSyncOperationH() has just cancelled.
+        final SyncOperation op = newSyncOperation("authority1", 1000);
+        final SyncOperation duplicate = newSyncOperation("authority1", 31000);
+        assertEquals(op.key, duplicate.key);
+
+        assertNull(SyncManager.findSyncToBatchWith(op, Arrays.asList(duplicate)));
+
+        final SyncOperation other = newSyncOperation("authority2", 41000);
+        assertSame(other, SyncManager.findSyncToBatchWith(op, Arrays.asList(duplicate, other)));
+    }
+
     private void checkFormatDurationHMS(String expected,
             int d, int h, int m, int s) {
         final long time = (d * 24 * 3600) + (h * 3600) + (m * 60) + s;
@@ -0,0 +1,95 @@
+/*
+ * Copyright (C) 2017 The Android Open Source Project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.android.server.display;
+
+import static com.android.server.display.AutomaticBrightnessController.AMBIENT_LIGHT_LONG_HORIZON_MILLIS;
+import static com.android.server.display.AutomaticBrightnessController.AMBIENT_LIGHT_SHORT_HORIZON_MILLIS;
+
+import static org.mockito.Mockito.mock;
+
+import android.hardware.SensorManager;
+import android.os.Looper;
+import android.test.suitebuilder.annotation.SmallTest;
+
+import junit.framework.TestCase;
+
+import java.util.Random;
+
+@SmallTest
+public class AutomaticBrightnessControllerTest extends TestCase {
+    private static final int LIGHT_SENSOR_RATE = 250;
+    private static final int AMBIENT_LIGHT_HORIZON = 10000;
+
+    private AutomaticBrightnessController createController() {
+        return new AutomaticBrightnessController(null /* callbacks */, Looper.getMainLooper(),
+                mock(SensorManager.class), null /* autoBrightnessSpline */,
+                0 /* lightSensorWarmUpTime */, 1 /* brightnessMin */, 255 /* brightnessMax */,
+                1.0f /* dozeScaleFactor */, LIGHT_SENSOR_RATE, LIGHT_SENSOR_RATE,
+                4000 /* brighteningLightDebounceConfig */,
+                8000 /* darkeningLightDebounceConfig */,
+                true /* resetAmbientLuxAfterWarmUpConfig */, AMBIENT_LIGHT_HORIZON,
+                3.0f /* autoBrightnessAdjustmentMaxGamma */, null /* dynamicHysteresis */);
+    }
+
+    private static void assertSlowAndFastMatch(AutomaticBrightnessController controller,
+            long now) {
+        controller.calculateSlowAndFastAmbientLux(now);
+        assertEquals("slow at " + now,
+                controller.calculateAmbientLux(now, AMBIENT_LIGHT_LONG_HORIZON_MILLIS),
+                controller.mSlowAmbientLux, 0.0f);
+        assertEquals("fast at " + now,
+                controller.calculateAmbientLux(now, AMBIENT_LIGHT_SHORT_HORIZON_MILLIS),
+                controller.mFastAmbientLux, 0.0f);
+    }
+
+    public void testSlowAndFastAmbientLuxMatchSeparatePasses() throws Exception {
+        final Random random = new Random(42);
+        for (int run = 0; run < 20; run++) {
+            final AutomaticBrightnessController controller = createController();
+            long time = 1000000;
+            for (int i = 0; i < 200; i++) {
+                // Gaps longer than the short horizon leave it with a single sample before it.
+                time += 1 + random.nextInt(3000);
+                controller.addAmbientLightSample(time, random.nextFloat() * 10000);
+                assertSlowAndFastMatch(controller, time);
+                assertSlowAndFastMatch(controller, time + random.nextInt(3000));
+            }
+        }
+    }
+
+    public void testSlowAndFastAmbientLuxMatchWithoutSampleBeforeHorizon() throws Exception {
+        final Random random = new Random(7);
+        for (int run = 0; run < 20; run++) {
+            final AutomaticBrightnessController controller = createController();
+            final long start = 1000000;
+            long time = start;
+            // All samples are within the short horizon of the evaluation time.
+            while (time < start + AMBIENT_LIGHT_SHORT_HORIZON_MILLIS - 500) {
+                controller.addAmbientLightSample(time, random.nextFloat() * 10000);
+                time += 1 + random.nextInt(LIGHT_SENSOR_RATE);
+            }
+            assertSlowAndFastMatch(controller, start + AMBIENT_LIGHT_SHORT_HORIZON_MILLIS - 1);
+        }
+    }
+
+    public void testSlowAndFastAmbientLuxWithoutSamples() throws Exception {
+        final AutomaticBrightnessController controller = createController();
+        controller.calculateSlowAndFastAmbientLux(1000000);
+        assertEquals(-1.0f, controller.mSlowAmbientLux, 0.0f);
+        assertEquals(-1.0f, controller.mFastAmbientLux, 0.0f);
+    }
+}
@@ -65,6 +65,25 @@ public class LocationRequestStatisticsTest extends AndroidTestCase {
         assertFalse(stats.isActive());
     }
 
+    /**
+     * Tests that deliveries are counted per package and provider.
+     */
+    public void testLocationDelivered() {
+        mStatistics.startRequesting(PACKAGE1, PROVIDER1, INTERVAL1);
+        mStatistics.startRequesting(PACKAGE2, PROVIDER1, INTERVAL1);
+        mStatistics.locationDelivered(PACKAGE1, PROVIDER1);
+        mStatistics.locationDelivered(PACKAGE1, PROVIDER1);
+        mStatistics.locationDelivered(PACKAGE2, PROVIDER1);
+        // No request for this provider, nothing to count.
+        mStatistics.locationDelivered(PACKAGE1, PROVIDER2);
+
+        assertEquals(2, mStatistics.statistics.size());
+        assertEquals(2, mStatistics.statistics.get(
+                new PackageProviderKey(PACKAGE1, PROVIDER1)).getNumDeliveries());
+        assertEquals(1, mStatistics.statistics.get(
+                new PackageProviderKey(PACKAGE2, PROVIDER1)).getNumDeliveries());
+    }
+
     /**
      * Tests that adding a single package works correctly when multiple intervals are used.
      */
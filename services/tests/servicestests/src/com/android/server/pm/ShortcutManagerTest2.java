@@ -2063,6 +2063,28 @@ public class ShortcutManagerTest2 extends BaseShortcutManagerTest {
         });
     }
 
+    public void testSaveSkipsUnchangedUserFile() throws Exception {
+        runWithCaller(CALLING_PACKAGE_1, USER_0, () -> {
+            assertTrue(mManager.setDynamicShortcuts(list(makeShortcut("s1"))));
+        });
+        mService.saveDirtyInfo();
+
+        final File path = mService.getUserFile(USER_0);
+        assertTrue(path.exists());
+        assertTrue(path.setLastModified(0));
+
+        // Nothing changed, so the file shouldn't be rewritten.
+        mService.scheduleSaveUser(USER_0);
+        mService.saveDirtyInfo();
+        assertEquals(0, path.lastModified());
+
+        runWithCaller(CALLING_PACKAGE_1, USER_0, () -> {
+            assertTrue(mManager.setDynamicShortcuts(list(makeShortcut("s1"), makeShortcut("s2"))));
+        });
+        mService.saveDirtyInfo();
+        assertTrue(path.lastModified() != 0);
+    }
+
     public void testIsUserUnlocked() {
         mRunningUsers.clear();
         mUnlockedUsers.clear();
@@ -0,0 +1,151 @@
+/*
+ * Copyright (C) 2017 The Android Open Source Project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.android.server.power;
+
+import android.os.BatteryStats;
+import android.os.PowerManager;
+import android.os.WorkSource;
+import android.os.test.TestLooper;
+import android.test.AndroidTestCase;
+import android.test.suitebuilder.annotation.SmallTest;
+import android.view.WindowManagerPolicy;
+
+import com.android.internal.app.IAppOpsService;
+import com.android.internal.app.IBatteryStats;
+
+import org.mockito.InOrder;
+import org.mockito.Mock;
+import org.mockito.MockitoAnnotations;
+
+import static org.mockito.Matchers.any;
+import static org.mockito.Matchers.anyBoolean;
+import static org.mockito.Matchers.anyInt;
+import static org.mockito.Matchers.eq;
+import static org.mockito.Mockito.inOrder;
+import static org.mockito.Mockito.never;
+import static org.mockito.Mockito.times;
+import static org.mockito.Mockito.verify;
+
+/**
+ * Tests for the wake lock release coalescing of {@link com.android.server.power.Notifier}.
+ */
+@SmallTest
+public class NotifierTest extends AndroidTestCase {
+    private static final long COALESCE_MS = 1000;
+    private static final int PARTIAL = PowerManager.PARTIAL_WAKE_LOCK;
+    private static final int TYPE_PARTIAL = BatteryStats.WAKE_TYPE_PARTIAL;
+    private static final String PACKAGE_NAME = "com.example";
+    private static final int UID = 10001;
+    private static final int PID = 1234;
+
+    private @Mock IBatteryStats mBatteryStats;
+    private @Mock IAppOpsService mAppOps;
+    private @Mock SuspendBlocker mSuspendBlocker;
+    private @Mock WindowManagerPolicy mPolicy;
+    private TestLooper mLooper;
+    private Notifier mNotifier;
+
+    public void setUp() throws Exception {
+        super.setUp();
+        MockitoAnnotations.initMocks(this);
+        mLooper = new TestLooper();
+        mNotifier = new Notifier(mLooper.getLooper(), getContext(), mBatteryStats, mAppOps,
+                mSuspendBlocker, mPolicy);
+        mNotifier.setWakeLockReleaseCoalesceMs(COALESCE_MS);
+    }
+
+    private void acquire(String tag, int uid, WorkSource workSource) {
+        mNotifier.onWakeLockAcquired(PARTIAL, tag, PACKAGE_NAME, uid, PID, workSource, null);
+    }
+
+    private void release(String tag, int uid, WorkSource workSource) {
+        mNotifier.onWakeLockReleased(PARTIAL, tag, PACKAGE_NAME, uid, PID, workSource, null);
+    }
+
+    private void endWindow() {
+        mLooper.moveTimeForward(COALESCE_MS);
+        mLooper.dispatchAll();
+    }
+
+    public void testReacquireWithinWindowIsCoalesced() throws Exception {
+        acquire("tag", UID, null);
+        release("tag", UID, null);
+        acquire("tag", UID, null);
+        endWindow();
+
+        verify(mBatteryStats, times(1)).noteStartWakelock(UID, PID, "tag", null, TYPE_PARTIAL,
+                false);
+        verify(mBatteryStats, never()).noteStopWakelock(anyInt(), anyInt(), any(),
+                any(), anyInt());
+        // The suspend blocker is only held while the release is pending.
+        verify(mSuspendBlocker, times(1)).acquire();
+        verify(mSuspendBlocker, times(1)).release();
+    }
+
+    public void testReacquireOfDifferentWakeLockIsReported() throws Exception {
+        final WorkSource workSource = new WorkSource(UID);
+        acquire("tag", UID, workSource);
+        release("tag", UID, workSource);
+        acquire("other", UID, workSource);
+        acquire("tag", UID + 1, workSource);
+        acquire("tag", UID, new WorkSource(UID + 1));
+
+        verify(mBatteryStats).noteStartWakelockFromSource(eq(workSource), eq(PID),
+                eq("other"), eq(null), eq(TYPE_PARTIAL), anyBoolean());
+        verify(mBatteryStats, times(2)).noteStartWakelockFromSource(eq(workSource), eq(PID),
+                eq("tag"), eq(null), eq(TYPE_PARTIAL), anyBoolean());
+        verify(mBatteryStats).noteStartWakelockFromSource(eq(new WorkSource(UID + 1)), eq(PID),
+                eq("tag"), eq(null), eq(TYPE_PARTIAL), anyBoolean());
+
+        endWindow();
+        verify(mBatteryStats).noteStopWakelockFromSource(workSource, PID, "tag", null,
+                TYPE_PARTIAL);
+    }
+
+    public void testPendingReleasesAreFlushedInOrder() throws Exception {
+        acquire("first", UID, null);
+        acquire("second", UID, null);
+        release("first", UID, null);
+        release("second", UID, null);
+        verify(mBatteryStats, never()).noteStopWakelock(anyInt(), anyInt(), any(),
+                any(), anyInt());
+
+        endWindow();
+        final InOrder inOrder = inOrder(mBatteryStats, mSuspendBlocker);
+        inOrder.verify(mBatteryStats).noteStopWakelock(UID, PID, "first", null, TYPE_PARTIAL);
+        inOrder.verify(mBatteryStats).noteStopWakelock(UID, PID, "second", null, TYPE_PARTIAL);
+        inOrder.verify(mSuspendBlocker).release();
+        verify(mSuspendBlocker, times(1)).acquire();
+    }
+
+    public void testZeroWindowFlushesImmediately() throws Exception {
+        acquire("tag", UID, null);
+        release("tag", UID, null);
+        verify(mBatteryStats, never()).noteStopWakelock(anyInt(), anyInt(), any(),
+                any(), anyInt());
+
+        mNotifier.setWakeLockReleaseCoalesceMs(0);
+        verify(mBatteryStats).noteStopWakelock(UID, PID, "tag", null, TYPE_PARTIAL);
+        verify(mSuspendBlocker).release();
+
+        // Later releases aren't held back.
+        acquire("tag", UID, null);
+        release("tag", UID, null);
+        verify(mBatteryStats, times(2)).noteStopWakelock(UID, PID, "tag", null, TYPE_PARTIAL);
+        verify(mSuspendBlocker, times(1)).acquire();
+    }
+}
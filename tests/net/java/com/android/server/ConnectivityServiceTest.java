@@ -121,6 +121,7 @@ import java.util.concurrent.CountDownLatch;
 import java.util.concurrent.LinkedBlockingQueue;
 import java.util.concurrent.TimeUnit;
 import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicInteger;
 import java.util.function.BooleanSupplier;
 import java.util.function.Predicate;
 
@@ -536,6 +537,9 @@ public class ConnectivityServiceTest extends AndroidTestCase {
         // mExpectations is non-null.
         private boolean mExpectingAdditions;
 
+        // Number of requests ConnectivityService sent, including score updates of known requests.
+        private final AtomicInteger mAddRequestCalls = new AtomicInteger(0);
+
         public MockNetworkFactory(Looper looper, Context context, String logTag,
                 NetworkCapabilities filter) {
             super(looper, context, logTag, filter);
@@ -545,6 +549,10 @@ public class ConnectivityServiceTest extends AndroidTestCase {
             return getRequestCount();
         }
 
+        public int getAddRequestCallCount() {
+            return mAddRequestCalls.get();
+        }
+
         protected void startNetwork() {
             mNetworkStarted.set(true);
             mNetworkStartedCV.open();
@@ -578,6 +586,7 @@ public class ConnectivityServiceTest extends AndroidTestCase {
 
             // Add the request.
             super.handleAddRequest(request, score);
+            mAddRequestCalls.incrementAndGet();
 
             // Reduce the number of request additions we're waiting for.
             if (mExpectingAdditions) {
@@ -1135,6 +1144,113 @@ public class ConnectivityServiceTest extends AndroidTestCase {
         waitFor(cv);
     }
 
+    @SmallTest
+    public void testUnchangedScoreIsIgnored() throws Exception {
+        final HandlerThread handlerThread = new HandlerThread("UnchangedScoreFactory");
+        handlerThread.start();
+        final NetworkCapabilities filter = new NetworkCapabilities()
+                .addTransportType(TRANSPORT_CELLULAR)
+                .addCapability(NET_CAPABILITY_INTERNET);
+        final MockNetworkFactory testFactory = new MockNetworkFactory(handlerThread.getLooper(),
+                mServiceContext, "testFactory", filter);
+        testFactory.setScoreFilter(40);
+        testFactory.expectAddRequests(1);
+        testFactory.register();
+        testFactory.waitForNetworkRequests(1);
+
+        final TestNetworkCallback defaultCallback = new TestNetworkCallback();
+        mCm.registerDefaultNetworkCallback(defaultCallback);
+        mWiFiNetworkAgent = new MockNetworkAgent(TRANSPORT_WIFI);
+        testFactory.expectAddRequests(2);  // Because the default request changes score twice.
+        mWiFiNetworkAgent.connect(true);
+        defaultCallback.expectAvailableAndValidatedCallbacks(mWiFiNetworkAgent);
+        testFactory.waitForNetworkRequests(1);
+
+        // Resending the same score causes no callbacks and no score update to factories.
+        final int addRequestCalls = testFactory.getAddRequestCallCount();
+        mWiFiNetworkAgent.adjustScore(0);
+        defaultCallback.assertNoCallback();
+        waitForIdleHandler(handlerThread, TIMEOUT_MS);
+        assertEquals(addRequestCalls, testFactory.getAddRequestCallCount());
+
+        // A different score still reaches factories.
+        testFactory.expectAddRequests(1);
+        mWiFiNetworkAgent.adjustScore(-1);
+        testFactory.waitForNetworkRequests(1);
+        defaultCallback.assertNoCallback();
+
+        testFactory.unregister();
+        mCm.unregisterNetworkCallback(defaultCallback);
+        handlerThread.quit();
+    }
+
+    @SmallTest
+    public void testScoreDropOnNetworkWithoutRequests() throws Exception {
+        final NetworkRequest request = new NetworkRequest.Builder()
+                .clearCapabilities().addCapability(NET_CAPABILITY_INTERNET).build();
+        final TestNetworkCallback callback = new TestNetworkCallback();
+        mCm.registerNetworkCallback(request, callback);
+
+        mCellNetworkAgent = new MockNetworkAgent(TRANSPORT_CELLULAR);
+        mCellNetworkAgent.connect(true);
+        callback.expectAvailableAndValidatedCallbacks(mCellNetworkAgent);
+
+        // Wifi becomes the default network and cell starts lingering. Lowering the score of the
+        // lingering cell network, which serves no requests, lets it linger out as before.
+        mWiFiNetworkAgent = new MockNetworkAgent(TRANSPORT_WIFI);
+        mWiFiNetworkAgent.connect(true);
+        callback.expectAvailableCallbacks(mWiFiNetworkAgent);
+        callback.expectCallback(CallbackState.LOSING, mCellNetworkAgent);
+        callback.expectCapabilitiesWith(NET_CAPABILITY_VALIDATED, mWiFiNetworkAgent);
+        mCellNetworkAgent.adjustScore(-5);
+        callback.assertNoCallback();
+        final int lingerTimeoutMs = TEST_LINGER_DELAY_MS + TEST_LINGER_DELAY_MS / 4;
+        callback.expectCallback(CallbackState.LOST, mCellNetworkAgent, lingerTimeoutMs);
+
+        // Unvalidated cell with a score that would beat wifi if it validated is kept up without
+        // serving any request. Once its score drops below that, it is torn down.
+        mCellNetworkAgent = new MockNetworkAgent(TRANSPORT_CELLULAR);
+        mCellNetworkAgent.adjustScore(20);
+        mCellNetworkAgent.connect(false);
+        callback.expectAvailableCallbacks(mCellNetworkAgent);
+        callback.assertNoCallback();
+        final ConditionVariable cv = mCellNetworkAgent.getDisconnectedCV();
+        mCellNetworkAgent.adjustScore(-20);
+        waitFor(cv);
+        verifyActiveNetwork(TRANSPORT_WIFI);
+
+        mCm.unregisterNetworkCallback(callback);
+    }
+
+    @SmallTest
+    public void testScoreDropOnNetworkWithRequests() throws Exception {
+        final TestNetworkCallback defaultCallback = new TestNetworkCallback();
+        mCm.registerDefaultNetworkCallback(defaultCallback);
+
+        mWiFiNetworkAgent = new MockNetworkAgent(TRANSPORT_WIFI);
+        mWiFiNetworkAgent.connect(true);
+        defaultCallback.expectAvailableAndValidatedCallbacks(mWiFiNetworkAgent);
+
+        // Keep cell up with a cell-specific request.
+        final NetworkRequest cellRequest = new NetworkRequest.Builder()
+                .addTransportType(TRANSPORT_CELLULAR).build();
+        final TestNetworkCallback cellCallback = new TestNetworkCallback();
+        mCm.requestNetwork(cellRequest, cellCallback);
+        mCellNetworkAgent = new MockNetworkAgent(TRANSPORT_CELLULAR);
+        mCellNetworkAgent.connect(true);
+        cellCallback.expectAvailableAndValidatedCallbacks(mCellNetworkAgent);
+        defaultCallback.assertNoCallback();
+
+        // Wifi drops below cell and hands the default request over to it.
+        mWiFiNetworkAgent.adjustScore(-20);
+        defaultCallback.expectAvailableCallbacks(mCellNetworkAgent);
+        assertEquals(mCellNetworkAgent.getNetwork(), mCm.getActiveNetwork());
+        cellCallback.assertNoCallback();
+
+        mCm.unregisterNetworkCallback(cellCallback);
+        mCm.unregisterNetworkCallback(defaultCallback);
+    }
+
     @SmallTest
     public void testCellularFallback() throws Exception {
         // Test bringing up validated cellular.
@@ -40,6 +40,7 @@ public class TestLooper {
     private static final Constructor<Looper> LOOPER_CONSTRUCTOR;
     private static final Field THREAD_LOCAL_LOOPER_FIELD;
     private static final Field MESSAGE_QUEUE_MESSAGES_FIELD;
+    private static final Field MESSAGE_QUEUE_LAST_FIELD;
     private static final Field MESSAGE_NEXT_FIELD;
     private static final Field MESSAGE_WHEN_FIELD;
     private static final Method MESSAGE_MARK_IN_USE_METHOD;
@@ -55,6 +56,8 @@ public class TestLooper {
             THREAD_LOCAL_LOOPER_FIELD.setAccessible(true);
             MESSAGE_QUEUE_MESSAGES_FIELD = MessageQueue.class.getDeclaredField("mMessages");
             MESSAGE_QUEUE_MESSAGES_FIELD.setAccessible(true);
+            MESSAGE_QUEUE_LAST_FIELD = MessageQueue.class.getDeclaredField("mLast");
+            MESSAGE_QUEUE_LAST_FIELD.setAccessible(true);
             MESSAGE_NEXT_FIELD = Message.class.getDeclaredField("next");
             MESSAGE_NEXT_FIELD.setAccessible(true);
             MESSAGE_WHEN_FIELD = Message.class.getDeclaredField("when");
@@ -133,6 +136,8 @@ public class TestLooper {
                                 MESSAGE_NEXT_FIELD.get(msg));
                     }
                     MESSAGE_NEXT_FIELD.set(msg, null);
+                    // The message may have been the last one, let the queue find it again.
+                    MESSAGE_QUEUE_LAST_FIELD.set(mLooper.getQueue(), null);
                     MESSAGE_MARK_IN_USE_METHOD.invoke(msg);
                     return msg;
                 }